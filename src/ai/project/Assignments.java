@@ -9,56 +9,172 @@ import java.util.*;
 /**
  * Assignments Class
  * <p>
- * Essentially a wrapper over a Map, which maps TimeSlots to their set of assigned courses.
+ * Tracks which TimeSlot each course/lab is assigned to, along with the running eval score.
  * <p>
  * Does some basic type enforcement; this class will not accept an assignment of a lecture to a lab TimeSlot, for
  * instance. Could be expanded to do more constraint enforcement if need be.
  * <p>
- * This class was written with the assumption that the underlying TimeSlot map will only track TimeSlots that
- * have something assigned to them already. In other words, Assignments objects have no inherent awareness of TimeSlots
- * that have nothing assigned to them yet.
+ * Internally everything is kept in primitive arrays indexed by the dense ids of the ProblemModel, packed into a single
+ * logical int array:
+ * - itemToSlot: the slot id each item is assigned to, or -1
+ * - nextInSlot: intrusive linked list of the items in each slot (the next item id, or -1)
+ * - slotHead: the first item id in each slot's list, or -1
+ * - slotCount: the number of items assigned to each slot
+ * - slot500Count: the number of 500-level items assigned to each slot
+ * <p>
+ * That array is persistent: it is stored as fixed-size chunks, and copies share chunks with the original until one of
+ * them writes to a chunk, at which point the writer takes its own copy of just that chunk (copy-on-write). Copying a
+ * set of Assignments therefore only copies the list of chunk references, and a population of schedules descended
+ * from the same parents costs memory in proportion to how much they differ. Copies never see each other's changes.
+ * <p>
+ * Pairs need no extra bookkeeping: a pair is unfilled exactly when one of its items is assigned and the other is not,
+ * which can be read straight off itemToSlot.
+ * <p>
+ * Two bitsets over slot ids are maintained alongside: the slots that are full, and the slots holding a 500-level item.
+ * With those, getViableSlotMask() can work out every viable slot for an item at once as a handful of word operations
+ * (see the viability kernel below), rather than running constr() slot by slot.
+ * <p>
+ * Every assignment is also recorded on an undo trail (the item and the eval score before it was added). A search can
+ * take getTrailMark() before trying an assignment and undoTo() that mark when it backtracks, so one Assignments can be
+ * mutated in place instead of copied for every node. Undo is strictly last-in-first-out, which is what lets the
+ * per-slot lists be unlinked in O(1).
+ * <p>
+ * A Zobrist hash of the assignments is kept up to date as well: the XOR of the ProblemModel's key for every (item,
+ * slot) assigned. Adding or undoing an assignment XORs its key in or out, and the same set of assignments always
+ * hashes the same, whatever order it was built in. The search uses it to recognise states it has already been through
+ * (see TranspositionTable).
  * <p>
  * Usage:
- * - Instantiate either de novo with the default constructor or as a copy of another Assignments
+ * - Instantiate either de novo from a ProblemModel or as a copy of another Assignments
  * - call addAssignment() to add a new course to a given TimeSlot
  * > this will fail silently if the type of TimeSlot and course are mismatched
- * - call getAssignments() to get all assignments for a particular TimeSlot
+ * - call getAssignment() to get all assignments for a particular TimeSlot
  * - call getAllAssignments() to get a copy of the map of all assignments
  */
 public class Assignments
 {
-	private HashMap<TimeSlot, HashSet<SlotItem>> assignments;
+	private final ProblemModel model;
+
+	// Offsets of each section of the packed state array
+	private final int nextOffset;
+	private final int headOffset;
+	private final int countOffset;
+	private final int count500Offset;
+
+	// Chunked, copy-on-write storage for the packed state. owned[c] is true if chunks[c] belongs to this instance alone
+	// and may be written in place.
+	private static final int CHUNK_BITS = 6;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private int[][] chunks;
+	private boolean[] owned;
 	private int evalScore;
-	private HashMap<SlotItem, UnfilledPairs> unfilledPairsMap;
+	private long hash;
+
+	// The most items each slot may hold. Normally the model's slot maximums, but a sub-problem can be given less (see
+	// DecomposedSearch). Shared, never modified.
+	private final int[] slotMax;
+
+	// Bitsets over slot ids: slots at their max, and slots with a 500-level item. Small enough to copy outright.
+	private long[] fullSlots;
+	private long[] slots500;
+
+	// Scratch mask for getViableSlotIds(), so that it does not allocate
+	private long[] scratch;
+
+	// Undo trail, as (item, eval score before the item was added) pairs. Allocated on first use.
+	private int[] trail;
+	private int trailSize;
 
 	/**
-	 * Default constructor. Creates a new map of TimeSlots to courses.
+	 * Default constructor. Creates an empty set of assignments for the given problem.
 	 *
-	 * @param table     TimeTable is required to calculate a baseline penalty for the total number of courses and labs with minimums.
+	 * @param model The compiled problem. Also used to calculate a baseline penalty for the total number of courses
+	 *              and labs with minimums.
 	 */
-	public Assignments(TimeTable table)
+	public Assignments(ProblemModel model)
 	{
-		assignments = new HashMap<>();
+		this.model = model;
+		this.slotMax = model.slotMax;
+
+		int numItems = model.getNumItems();
+		int numSlots = model.getNumSlots();
+		nextOffset = numItems;
+		headOffset = 2 * numItems;
+		countOffset = headOffset + numSlots;
+		count500Offset = countOffset + numSlots;
+
+		int length = count500Offset + numSlots;
+		chunks = new int[(length + CHUNK_MASK) >>> CHUNK_BITS][CHUNK_SIZE];
+		owned = new boolean[chunks.length];
+		Arrays.fill(owned, true);
+		for (int i = 0; i < countOffset; i++)
+		{
+			set(i, -1);
+		}
+
+		fullSlots = Bits.create(numSlots);
+		slots500 = Bits.create(numSlots);
+		for (int slot = 0; slot < numSlots; slot++)
+		{
+			if (slotMax[slot] <= 0) Bits.set(fullSlots, slot);
+		}
+
+		TimeTable table = model.getTimeTable();
 		evalScore = (table.getTotalLabsWithMinimum() * Penalties.getInstance().getLabsMin() * Penalties.getInstance().getwMinFilled())
 				+ (table.getTotalLecturesWithMinimum() * Penalties.getInstance().getCourseMin() * Penalties.getInstance().getwMinFilled());
-		unfilledPairsMap = new HashMap<>();
 	}
 
 	/**
-	 * Copy constructor. Basically just copies the assignment HashMap and eval score.
+	 * Copy constructor. Shares all state chunks with the original, which then both copy a chunk the first time they
+	 * write to it, so this only costs one copy of the chunk reference list. The copy starts with an empty undo trail.
 	 *
 	 * @param other The Assignments to copy.
 	 */
 	public Assignments(Assignments other)
 	{
-		this.assignments = other.getAllAssignments();
-		this.evalScore = other.getEvalScore();
-		this.unfilledPairsMap = other.getUnfilledPairsMap();
+		this(other, other.slotMax);
+	}
+
+	/**
+	 * Copy constructor that also changes the most items each slot may hold. Otherwise the same as
+	 * Assignments(Assignments).
+	 *
+	 * @param other   The Assignments to copy.
+	 * @param slotMax The most items each slot may hold, indexed by slot id. The array is kept, not copied.
+	 */
+	public Assignments(Assignments other, int[] slotMax)
+	{
+		this.model = other.model;
+		this.slotMax = slotMax;
+		this.nextOffset = other.nextOffset;
+		this.headOffset = other.headOffset;
+		this.countOffset = other.countOffset;
+		this.count500Offset = other.count500Offset;
+		this.chunks = other.chunks.clone();
+		this.owned = new boolean[chunks.length];
+		this.evalScore = other.evalScore;
+		this.hash = other.hash;
+		this.fullSlots = other.fullSlots.clone();
+		this.slots500 = other.slots500.clone();
+		if (slotMax != other.slotMax)
+		{
+			for (int slot = 0; slot < slotMax.length; slot++)
+			{
+				if (getNumAssigned(slot) >= slotMax[slot]) Bits.set(fullSlots, slot);
+				else Bits.clear(fullSlots, slot);
+			}
+		}
+
+		// The chunks are now shared, so the original can no longer write to them in place either
+		Arrays.fill(other.owned, false);
 	}
 
 	/**
 	 * Assign a new course/lab to a time slot in this set of assignments, iff the type of the new SlotItem matches
-	 * the type of the TimeSlot.
+	 * the type of the TimeSlot. An item can only be assigned once; assigning an item that is already assigned does
+	 * nothing.
 	 * <p>
 	 * This does not enforce maximum course constraints, though it could easily be made to do so.
 	 *
@@ -67,93 +183,237 @@ public class Assignments
 	 */
 	public void addAssignment(TimeSlot timeSlot, SlotItem item)
 	{
-		if ((timeSlot.isLectureSlot() && item.isLecture())
-				|| (timeSlot.isLabSlot() && !item.isLecture()))
+		addAssignment(timeSlot.getId(), item.getId());
+	}
+
+	/**
+	 * Id-based version of addAssignment(TimeSlot, SlotItem).
+	 *
+	 * @param slot The id of the TimeSlot to assign to.
+	 * @param item The id of the SlotItem to assign.
+	 */
+	public void addAssignment(int slot, int item)
+	{
+		if (model.isLecture(item) != (slot < model.getEndSlotId(true))) return;
+		if (get(item) != -1) return;
+
+		if (trail == null)
+		{
+			trail = new int[64];
+		}
+		else if (trailSize + 2 > trail.length)
 		{
-			HashSet<SlotItem> set = assignments.get(timeSlot);
+			trail = Arrays.copyOf(trail, trail.length * 2);
+		}
+		trail[trailSize++] = item;
+		trail[trailSize++] = evalScore;
+
+		// Adjust eval for this Assignments instance. This has to happen before the item is linked in, as eval looks
+		// at what the slot held beforehand.
+		evalScore += evalDelta(slot, item);
+		hash ^= model.zobrist[item * model.getNumSlots() + slot];
+
+		set(item, slot);
+		set(nextOffset + item, get(headOffset + slot));
+		set(headOffset + slot, item);
+		int count = get(countOffset + slot) + 1;
+		set(countOffset + slot, count);
+		if (count >= slotMax[slot]) Bits.set(fullSlots, slot);
+		if (model.item500Level[item])
+		{
+			set(count500Offset + slot, get(count500Offset + slot) + 1);
+			Bits.set(slots500, slot);
+		}
+	}
 
-			if (set == null)
-			{
-				// Create a new assignment for this TimeSlot if one doesn't exist
-				set = new HashSet<>();
-				assignments.put(timeSlot, set);
-			}
-            else if (set.contains(item)) return;
+	/**
+	 * Reads one entry of the packed state.
+	 *
+	 * @param index The index into the packed state.
+	 * @return The value at that index.
+	 */
+	private int get(int index)
+	{
+		return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
 
-			set.add(item);
+	/**
+	 * Writes one entry of the packed state, first taking a private copy of its chunk if the chunk is shared.
+	 *
+	 * @param index The index into the packed state.
+	 * @param value The new value.
+	 */
+	private void set(int index, int value)
+	{
+		int chunk = index >>> CHUNK_BITS;
+		if (!owned[chunk])
+		{
+			chunks[chunk] = chunks[chunk].clone();
+			owned[chunk] = true;
+		}
+		chunks[chunk][index & CHUNK_MASK] = value;
+	}
 
-			// Adjust eval for this Assignments instance.
-            int oldEval = evalScore;
-            evalScore = eval(timeSlot, item).getEval();
+	/**
+	 * Gets a mark for the current position of the undo trail. Passing it to undoTo() later will take back every
+	 * assignment made after this call.
+	 *
+	 * @return The current trail position.
+	 */
+	public int getTrailMark()
+	{
+		return trailSize;
+	}
 
-			// Handle pairs. We track unfilled pairs as we go so that we don't have to search the entire set of
-			// Assignments every time we evaluate soft constraints. The actual eval adjustment is done with the
-			// call to eval() above.
-			if (item.hasPairs())
+	/**
+	 * Undoes every assignment made since the given trail mark was taken, most recent first, restoring the eval score
+	 * as it was at the mark.
+	 *
+	 * @param mark A mark previously returned by getTrailMark() on this Assignments.
+	 */
+	public void undoTo(int mark)
+	{
+		while (trailSize > mark)
+		{
+			evalScore = trail[--trailSize];
+			int item = trail[--trailSize];
+			int slot = get(item);
+			hash ^= model.zobrist[item * model.getNumSlots() + slot];
+
+			// Undo is LIFO, so the item is always at the head of its slot's list
+			set(headOffset + slot, get(nextOffset + item));
+			set(nextOffset + item, -1);
+			int count = get(countOffset + slot) - 1;
+			set(countOffset + slot, count);
+			if (count < slotMax[slot]) Bits.clear(fullSlots, slot);
+			if (model.item500Level[item])
 			{
-				for (SlotItem paired : item.getPairs())
-				{
-					// check if we've already added this
-					UnfilledPairs unfilled = unfilledPairsMap.get(paired);
-					if ((unfilled != null) && (unfilled.expectsPair(item)))
-					{
-						// resolve the pair
-						unfilled.resolvePair(item);
-					}
-					else
-					{
-						// The corresponding pair doesn't exist yet
-						UnfilledPairs thisUnfilled = unfilledPairsMap.get(item);
-						if (thisUnfilled == null)
-						{
-							thisUnfilled = new UnfilledPairs(timeSlot);
-							unfilledPairsMap.put(item, thisUnfilled);
-						}
-						thisUnfilled.addPair(paired);
-					}
-				}
+				int count500 = get(count500Offset + slot) - 1;
+				set(count500Offset + slot, count500);
+				if (count500 == 0) Bits.clear(slots500, slot);
 			}
+			set(item, -1);
 		}
 	}
 
 	/**
 	 * Given a SlotItem and a TimeTable (representing the full set of available TimeSlots irrespective of assignments)
 	 * this method finds all slots that meet constr() in the current Assignments (see below) and returns these slots
-	 * as an ordered set, sorted by an Eval comparator.
+	 * along with the eval score each would give. The slots are returned in slot id order; it is up to the caller to
+	 * order them (see ValueOrdering).
 	 * <p>
 	 * N.B. This does not actually assign anything to the set of assignments. The addAssignment() method must still
 	 * be called if we want to modify the Assignments.
 	 *
-	 * @param timeTable The TimeTable with all valid TimeSlots for the Department. Needed because an Assignments instance
-	 *                  is not aware of any TimeSlots that it doesn't yet assign anything to.
+	 * @param timeTable The TimeTable with all valid TimeSlots for the Department.
 	 * @param slotItem  The SlotItem we want to assign.
 	 */
 	public ArrayList<Evaluated> getViableTimeSlots(TimeTable timeTable, SlotItem slotItem)
 	{
 		ArrayList<Evaluated> rv = new ArrayList<>();
+		int item = slotItem.getId();
+
+		long[] viable = Bits.create(model.getNumSlots());
+		getViableSlotMask(item, viable);
+		for (int slot = Bits.nextSetBit(viable, 0); slot != -1; slot = Bits.nextSetBit(viable, slot + 1))
+		{
+			rv.add(new Evaluated(model.getSlot(slot), evalScore + evalDelta(slot, item)));
+		}
 
-		// Save a bit of processing by only looking at slots that match the type of slotItem
-		ArrayList<TimeSlot> slots = slotItem.isLecture() ? timeTable.getAllLectureSlots() : timeTable.getAllLabSlots();
+		return rv;
+	}
 
-		for (TimeSlot slot : slots)
+	/**
+	 * Allocation-free version of getViableTimeSlots(), for the search engines. Fills the given buffer with the ids of
+	 * all slots that meet constr() for the item, in slot id order.
+	 *
+	 * @param item The id of the item we want to assign.
+	 * @param out  Buffer to fill; must have room for every slot of the item's type.
+	 * @return The number of viable slots written to out.
+	 */
+	public int getViableSlotIds(int item, int[] out)
+	{
+		if (scratch == null) scratch = Bits.create(model.getNumSlots());
+		getViableSlotMask(item, scratch);
+
+		int count = 0;
+		for (int slot = Bits.nextSetBit(scratch, 0); slot != -1; slot = Bits.nextSetBit(scratch, slot + 1))
+		{
+			out[count++] = slot;
+		}
+		return count;
+	}
+
+	/**
+	 * Viability kernel. Computes, as one bitset expression, the slots that meet every constraint in constr() which
+	 * depends on the other assignments:
+	 * <p>
+	 * viable = staticDomain AND NOT fullSlots
+	 * AND NOT (slots holding an incompatible item)
+	 * AND NOT (slots overlapping an assigned lecture/lab or 813/913 conflict)
+	 * AND NOT (slots holding a 500-level item, if the item is 500-level)
+	 * AND (slots between those of the assigned items in its symmetry class that come before and after it)
+	 * <p>
+	 * The constraints that depend only on the item and the slot were applied once, when the ProblemModel built the
+	 * item's static domain.
+	 *
+	 * @param item The id of the item we want to assign.
+	 * @param out  Bitset over slot ids to write the result into.
+	 */
+	public void getViableSlotMask(int item, long[] out)
+	{
+		long[] domain = model.itemDomain[item];
+		for (int w = 0; w < out.length; w++)
 		{
-			if (constr(slot, slotItem))
-				rv.add(eval(slot, slotItem));
+			out[w] = domain[w] & ~fullSlots[w];
 		}
 
-		// Randomize ordering
-		Collections.shuffle(rv);
+		if (model.item500Level[item]) Bits.andNot(out, slots500);
 
-		return rv;
+		for (int other : model.itemIncompatible[item])
+		{
+			int otherSlot = get(other);
+			if (otherSlot != -1) Bits.clear(out, otherSlot);
+		}
+
+		clearAssignedOverlaps(out, model.itemLectureLabConflicts[item]);
+		clearAssignedOverlaps(out, model.itemSpecialConflicts[item]);
+
+		int[] group = model.itemSymmetryClass[item];
+		if (group != null)
+		{
+			int rank = model.itemSymmetryRank[item];
+			int lowest = 0;
+			int highest = model.getNumSlots() - 1;
+			for (int i = 0; i < group.length; i++)
+			{
+				int otherSlot = get(group[i]);
+				if (otherSlot == -1) continue;
+
+				if (i < rank) lowest = Math.max(lowest, otherSlot);
+				else if (i > rank) highest = Math.min(highest, otherSlot);
+			}
+			Bits.retainRange(out, lowest, highest);
+		}
+	}
+
+	/**
+	 * Clears from a slot bitset every slot that overlaps the slot of any of the given items (where assigned).
+	 *
+	 * @param out    The bitset to clear slots from.
+	 * @param others The ids of the items whose slots must not be overlapped.
+	 */
+	private void clearAssignedOverlaps(long[] out, int[] others)
+	{
+		for (int other : others)
+		{
+			int otherSlot = get(other);
+			if (otherSlot != -1) Bits.andNot(out, model.slotOverlap[otherSlot]);
+		}
 	}
 
 	/**
 	 * Retrieves a copy of the set of assignments for a given TimeSlot in the set of Assignments.
-	 * This is an O(n) operation, but because no TimeSlot should be assigned a huge number of courses, this should
-	 * still perform pretty quickly.
-	 * <p>
-	 * The TimeSlot passed in need not be reference equal, i.e. it can have the same day and time, but be a different
-	 * object.
 	 * <p>
 	 * May return null if nothing is yet assigned to the given TimeSlot.
 	 *
@@ -162,53 +422,115 @@ public class Assignments
 	 */
 	public HashSet<SlotItem> getAssignment(TimeSlot timeSlot)
 	{
-		HashSet<SlotItem> assigned = assignments.get(timeSlot);
-		if (assigned == null) return null;
+		int slot = timeSlot.getId();
+		if (get(countOffset + slot) == 0) return null;
 
-		return new HashSet<>(assignments.get(timeSlot));
+		HashSet<SlotItem> rv = new HashSet<>();
+		for (int item = get(headOffset + slot); item != -1; item = get(nextOffset + item))
+		{
+			rv.add(model.getItem(item));
+		}
+		return rv;
 	}
 
-    /**
-     * Gets the TimeSlot corresponding to a given SlotItem, if it exists in the Assignments.
-     *
-     * @param slotItem The SlotItem for which to search if we have an assigned TimeSlot.
-     * @return The TimeSlot the given SlotItem (or one equal to it) is assigned to.
-     */
+	/**
+	 * Gets the TimeSlot corresponding to a given SlotItem, if it exists in the Assignments.
+	 *
+	 * @param slotItem The SlotItem for which to search if we have an assigned TimeSlot.
+	 * @return The TimeSlot the given SlotItem is assigned to, or null if it is not assigned.
+	 */
 	public TimeSlot getTimeSlot(SlotItem slotItem)
 	{
-		for (TimeSlot element : assignments.keySet())
-		{
-			if (assignments.get(element).contains(slotItem))
-			{
-				return element;
-			}
-		}
-		return null;
+		int slot = get(slotItem.getId());
+		return (slot == -1) ? null : model.getSlot(slot);
+	}
+
+	/**
+	 * Gets the id of the slot the given item is assigned to.
+	 *
+	 * @param item The id of the item.
+	 * @return The id of the slot the item is assigned to, or -1 if it is not assigned.
+	 */
+	public int getSlotId(int item)
+	{
+		return get(item);
 	}
 
 	/**
 	 * Get the number of SlotItems (lectures or labs) assigned to the given TimeSlot.
-	 * Returns 0 if the TimeSlot has not been assigned any courses (does not exist in the map).
 	 *
-	 * @param timeSlot The TimeSlot (not necessarily reference equal) to look for.
-	 * @return The number of elements in the set of courses mapped to the TimeSlot.
+	 * @param timeSlot The TimeSlot to look for.
+	 * @return The number of courses assigned to the TimeSlot.
 	 */
 	public int getNumAssigned(TimeSlot timeSlot)
 	{
-		HashSet<SlotItem> set = assignments.get(timeSlot);
-		return (set == null) ? 0 : set.size();
+		return get(countOffset + timeSlot.getId());
+	}
+
+	/**
+	 * Id-based version of getNumAssigned(TimeSlot).
+	 *
+	 * @param slot The id of the slot.
+	 * @return The number of courses assigned to the slot.
+	 */
+	public int getNumAssigned(int slot)
+	{
+		return get(countOffset + slot);
+	}
+
+	/**
+	 * Gets the first item assigned to a slot. Together with getNextInSlot(), this walks every item in the slot without
+	 * building a set:
+	 * <p>
+	 * for (int item = getFirstInSlot(slot); item != -1; item = getNextInSlot(item))
+	 *
+	 * @param slot The id of the slot.
+	 * @return The id of the most recently assigned item in the slot, or -1 if the slot is empty.
+	 */
+	public int getFirstInSlot(int slot)
+	{
+		return get(headOffset + slot);
+	}
+
+	/**
+	 * Gets the item after the given one in its slot. See getFirstInSlot().
+	 *
+	 * @param item The id of an assigned item.
+	 * @return The id of the next item in the same slot, or -1 if there are no more.
+	 */
+	public int getNextInSlot(int item)
+	{
+		return get(nextOffset + item);
 	}
 
 	/**
-	 * Get the list of courses assigned to the managed TimeSlot. This actually retrieves a shallow copy of the
-	 * underlying map for the sake of encapsulation, which may be a slightly expensive operation if this object
-	 * is managing a lot of assignments.
+	 * Gets the ProblemModel these Assignments are built on.
 	 *
-	 * @return A copy of the map of courses assigned with this Assignments object.
+	 * @return The model.
+	 */
+	public ProblemModel getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * Builds a map of every TimeSlot that has something assigned to it to the set of courses assigned there.
+	 * This builds the map from scratch, so it is a relatively expensive operation.
+	 *
+	 * @return A map of TimeSlots to the courses assigned to them.
 	 */
 	public HashMap<TimeSlot, HashSet<SlotItem>> getAllAssignments()
 	{
-		return new HashMap<>(assignments);
+		HashMap<TimeSlot, HashSet<SlotItem>> rv = new HashMap<>();
+		for (int slot = 0; slot < model.getNumSlots(); slot++)
+		{
+			if (get(countOffset + slot) > 0)
+			{
+				TimeSlot timeSlot = model.getSlot(slot);
+				rv.put(timeSlot, getAssignment(timeSlot));
+			}
+		}
+		return rv;
 	}
 
     /**
@@ -218,8 +540,8 @@ public class Assignments
      */
     public HashSet<SlotItem> getAllCourses() {
         HashSet<SlotItem> rv = new HashSet<>();
-        for (HashSet<SlotItem> set : getAllAssignments().values()) {
-            rv.addAll(set);
+        for (int item = 0; item < model.getNumItems(); item++) {
+            if (get(item) != -1) rv.add(model.getItem(item));
         }
         return rv;
     }
@@ -235,6 +557,28 @@ public class Assignments
 		return evalScore;
 	}
 
+	/**
+	 * Gets the most items a slot may hold in these Assignments. This is the slot's max, unless these Assignments were
+	 * copied with tighter limits.
+	 *
+	 * @param slot The id of the slot.
+	 * @return The capacity of the slot.
+	 */
+	public int getSlotMax(int slot)
+	{
+		return slotMax[slot];
+	}
+
+	/**
+	 * Gets the Zobrist hash of these Assignments. Two Assignments holding the same assignments have the same hash.
+	 *
+	 * @return The XOR of the ProblemModel's Zobrist key for every assignment made.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
 	/**
 	 * Get all TimeSlots that overlap with a given TimeSlot and have something assigned to them.
 	 *
@@ -244,11 +588,11 @@ public class Assignments
 	public HashSet<TimeSlot> getAssignedOverlaps(TimeSlot timeSlot)
 	{
 		HashSet<TimeSlot> rv = new HashSet<>();
-		Set<TimeSlot> candidates = assignments.keySet();
+		int slot = timeSlot.getId();
 
-		for (TimeSlot candidate : candidates)
+		for (int candidate = 0; candidate < model.getNumSlots(); candidate++)
 		{
-			if (timeSlot.overlaps(candidate)) rv.add(candidate);
+			if (get(countOffset + candidate) > 0 && model.overlaps(slot, candidate)) rv.add(model.getSlot(candidate));
 		}
 
 		return rv;
@@ -272,17 +616,6 @@ public class Assignments
 		return rv;
 	}
 
-	/**
-	 * Gets a copy of the internal map which maps SlotItems to UnfilledPairs.
-	 * Intended mainly for the copy constructor.
-	 *
-	 * @return A copy of the internal map which maps SlotItems to UnfilledPairs.
-	 */
-	public HashMap<SlotItem, UnfilledPairs> getUnfilledPairsMap()
-	{
-		return new HashMap<>(unfilledPairsMap);
-	}
-
 
 	// ------------- Hard Constraint Assessors -------------
 
@@ -294,6 +627,9 @@ public class Assignments
 	 * instantiated with the partial assignments passed in through the constructor, so they'll already be included
 	 * in the set of assignments under consideration.
 	 * <p>
+	 * The constraints that depend only on the item and the slot (unwanted slots, evening sections, the Tuesday dead
+	 * zone and the 18:00 start for CPSC 813/913) are checked against the item's static domain in the ProblemModel.
+	 * <p>
 	 * Additionally, there are some limitations. Most notably, the CPSC 813/CPSC 913 hard constraint does not check
 	 * for incompatibility between their corresponding courses (313 for 813, 413 for 913). See doc for each constraint
 	 * for more details.
@@ -304,216 +640,144 @@ public class Assignments
 	 */
 	public boolean constr(TimeSlot timeSlot, SlotItem item)
 	{
-		return (underMax(timeSlot)
-				&& courseLabNoOverlap(timeSlot, item)
-				&& isFullyCompatible(timeSlot, item)
-				&& isNotUnwanted(timeSlot, item)
-				&& eveningClassInEveningSlot(timeSlot, item)
-				&& noOther500Level(timeSlot, item)
-				&& outsideTuesdayDeadZone(timeSlot)
-				&& satisfiesSpecialOverlap(timeSlot, item));
+		return constr(timeSlot.getId(), item.getId());
+	}
+
+	/**
+	 * Id-based version of constr(TimeSlot, SlotItem).
+	 *
+	 * @param slot The id of the TimeSlot for the putative assignment.
+	 * @param item The id of the SlotItem being assigned.
+	 * @return True if all hard constraints are met for item assigned to slot.
+	 */
+	public boolean constr(int slot, int item)
+	{
+		return (model.inDomain(item, slot)
+				&& underMax(slot)
+				&& courseLabNoOverlap(slot, item)
+				&& isFullyCompatible(slot, item)
+				&& noOther500Level(slot, item)
+				&& satisfiesSpecialOverlap(slot, item)
+				&& inSymmetryOrder(slot, item));
 	}
 
 	/**
 	 * Verifies that, after adding an additional SlotItem assigned to a given TimeSlot, the maximum for the TimeSlot
 	 * will still be equal to or less than the maximum number of courses/lectures for that slot.
 	 *
-	 * @param timeSlot The TimeSlot we might add an assignment to.
-	 * @return False if assigning a new SlotItem to timeSlot will cause it to exceed its maximum value. True otherwise.
+	 * @param slot The TimeSlot we might add an assignment to.
+	 * @return False if assigning a new SlotItem to slot will cause it to exceed its maximum value. True otherwise.
 	 */
-	private boolean underMax(TimeSlot timeSlot)
+	private boolean underMax(int slot)
 	{
-		return ((getNumAssigned(timeSlot) + 1) <= timeSlot.getMax());
+		return ((get(countOffset + slot) + 1) <= slotMax[slot]);
 	}
 
 	/**
-	 * Verifies that a TimeSlot we are trying to assign a SlotItem to does not contain conflicting lectures/labs.
-	 * - If item is a lecture, we check that TimeSlot has no assignments for labs in the same section.
-	 * - If item is a lab, we check that TimeSlot has no assignments for lectures in the same section.
+	 * Verifies that a TimeSlot we are trying to assign a SlotItem to does not overlap conflicting lectures/labs.
+	 * A lab conflicts with its parent lecture; an unparented lab conflicts with every lecture of its course.
 	 * <p>
-	 * This method considers unparented labs to be incompatible with any section of the course.
+	 * The conflicting items for each item are precomputed by the ProblemModel, so this only has to look up where
+	 * each of them is assigned.
 	 *
-	 * @param timeSlot The TimeSlot being examined.
-	 * @param item     The SlotItem to assign.
-	 * @return False if the TimeSlot has assignments for conflicting courses/labs, true otherwise.
+	 * @param slot The TimeSlot being examined.
+	 * @param item The SlotItem to assign.
+	 * @return False if an overlapping TimeSlot has assignments for conflicting courses/labs, true otherwise.
 	 */
-	private boolean courseLabNoOverlap(TimeSlot timeSlot, SlotItem item)
+	private boolean courseLabNoOverlap(int slot, int item)
 	{
-		HashSet<SlotItem> overlapCourses = getAssignedOverlapCourses(timeSlot);
-
-		if (item.isLecture())
-		{
-			// Check for overlapping labs
-			for (SlotItem otherCourse : overlapCourses)
-			{
-				if (!otherCourse.isLecture() && item.sameCourse(otherCourse))
-				{
-					// Found an assigned lab in the same course. See if there's a conflict.
-					Lab otherLab = (Lab) otherCourse;
-					if (!otherLab.hasParent() || otherLab.getParent().equals(item)) return false;
-				}
-			}
-		}
-		else
-		{
-			// Check for overlapping lectures
-			for (SlotItem otherCourse : overlapCourses)
-			{
-				if (otherCourse.isLecture() && item.sameCourse(otherCourse))
-				{
-					// Found an assigned lecture in the same course. See if there's a conflict.
-					Lecture otherLec = (Lecture) otherCourse;
-					Lab thisLab = (Lab) item;
-					if (!thisLab.hasParent() || thisLab.getParent().equals(otherLec)) return false;
-					return false;
-				}
-			}
-		}
-
-		return true;
+		return noAssignedOverlap(slot, model.itemLectureLabConflicts[item]);
 	}
 
 	/**
 	 * Verifies that a TimeSlot we are considering assigning a SlotItem to does not already have assignments which are
 	 * incompatible with the course being added.
 	 *
-	 * @param timeSlot The TimeSlot to assign to.
-	 * @param item     The SlotItem being assigned.
-	 * @return False if TimeSlot has any assignments which are incompatible with item. True otherwise.
+	 * @param slot The TimeSlot to assign to.
+	 * @param item The SlotItem being assigned.
+	 * @return False if the slot has any assignments which are incompatible with item. True otherwise.
 	 */
-	private boolean isFullyCompatible(TimeSlot timeSlot, SlotItem item)
+	private boolean isFullyCompatible(int slot, int item)
 	{
-		HashSet<SlotItem> others = getAssignment(timeSlot);
-		if (others == null)
+		for (int other : model.itemIncompatible[item])
 		{
-			return true;
-		}
-		for (SlotItem other : others)
-		{
-			if (item.incompatibleWith(other))
-			{
-				return false;
-			}
+			if (get(other) == slot) return false;
 		}
 
 		return true;
 	}
 
 	/**
-	 * Verifies that a TimeSlot we are considering assigning a SlotItem to is not unwanted for the course we're trying
-	 * to assign.
+	 * Verifies that, if a SlotItem is a 500-level course, then it is not being assigned to a TimeSlot where we have
+	 * already assigned any other 500-level courses.
 	 *
-	 * @param timeSlot The TimeSlot being assigned to.
-	 * @param item     The SlotItem being assigned.
-	 * @return False if timeSlot is unwanted for item. True otherwise.
+	 * @param slot The TimeSlot to assign to.
+	 * @param item The SlotItem being assigned.
+	 * @return False if item is 500-level and other 500-level courses are assigned to slot already. True otherwise.
 	 */
-	private boolean isNotUnwanted(TimeSlot timeSlot, SlotItem item)
+	private boolean noOther500Level(int slot, int item)
 	{
-		return !(item.hasUnwanted(timeSlot));
+		return !(model.item500Level[item] && get(count500Offset + slot) > 0);
 	}
 
 	/**
-	 * Verifies that an evening SlotItem (course or lecture section beginning with 9) is being assigned to an evening
-	 * TimeSlot (time >= 18:00).
+	 * Checks the special constraint for CPSC 813/913 w.r.t. 313/413. Ensures that if the slot is 813 or 913, there
+	 * are no overlaps with any section of 313 or 413, resp. Always true for courses which are not one of
+	 * {CPSC 313, CPSC 413, CPSC 813, CPSC 913}. The 18:00 start required of 813/913 is part of their static domain.
 	 * <p>
-	 * This returns false only if the SlotItem is an evening section, but the TimeSlot is not an evening slot.
-	 * This does NOT return false if the SlotItem is *not* an evening section, but the TimeSlot is an evening slot,
-	 * because that is not a requirement as far as I can see. If this is seen as undesirable, this can be changed
-	 * without much difficulty.
+	 * Note that this method does not currently check for transitive incompatibility. For example, if given a 913 slot,
+	 * it will check for overlapping 413 sections (and return false if it finds them) but it will not search for
+	 * sections which are incompatible with 413.
 	 *
-	 * @param timeSlot The TimeSlot being assigned to.
-	 * @param item     The SlotItem being assigned.
-	 * @return False if item is an evening section and timeSlot is not an evening slot. True otherwise.
+	 * @param slot The TimeSlot to possibly assign to.
+	 * @param item The SlotItem being assigned.
+	 * @return True if the condition is met, false otherwise.
 	 */
-	private boolean eveningClassInEveningSlot(TimeSlot timeSlot, SlotItem item)
+	private boolean satisfiesSpecialOverlap(int slot, int item)
 	{
-		return !(item.isEvening() && !timeSlot.isEveningSlot());
+		return noAssignedOverlap(slot, model.itemSpecialConflicts[item]);
 	}
 
 	/**
-	 * Verifies that, if a SlotItem is a 500-level course, then it is not being assigned to a TimeSlot where we have
-	 * already assigned any other 500-level courses.
+	 * Symmetry breaking. The items of a symmetry class (see ProblemModel.findSymmetryClasses()) can swap slots without
+	 * changing anything, so they are only ever assigned in slot order: an item may not be placed before any item of
+	 * its class with a lower id, or after any with a higher id. This is not one of the problem's hard constraints, but
+	 * every schedule can be reordered to meet it without changing its eval score, so no solution is lost.
 	 *
-	 * @param timeSlot The TimeSlot to assign to.
-	 * @param item     The SlotItem being assigned.
-	 * @return False if item is 500-level and other 500-level courses are assigned to timeSlot already. True otherwise.
+	 * @param slot The TimeSlot to possibly assign to.
+	 * @param item The SlotItem being assigned.
+	 * @return True if the slot keeps the item's class in slot order, false otherwise.
 	 */
-	private boolean noOther500Level(TimeSlot timeSlot, SlotItem item)
+	private boolean inSymmetryOrder(int slot, int item)
 	{
-		if (!item.is500Level()) return true;
-
-		HashSet<SlotItem> others = getAssignment(timeSlot);
-		if (others == null) return true;
+		int[] group = model.itemSymmetryClass[item];
+		if (group == null) return true;
 
-		for (SlotItem other : others)
+		int rank = model.itemSymmetryRank[item];
+		for (int i = 0; i < group.length; i++)
 		{
-			if (other.is500Level())
-			{
-				return false;
-			}
+			int otherSlot = get(group[i]);
+			if (otherSlot == -1) continue;
+
+			if ((i < rank && otherSlot > slot) || (i > rank && otherSlot < slot)) return false;
 		}
 
 		return true;
 	}
 
 	/**
-	 * One hard constraint is that nothing can be scheduled on Tuesday between 11:00-12:30.
-	 * This method checks that constraint.
+	 * Checks that none of the given items is assigned to a slot that overlaps the given slot.
 	 *
-	 * @param timeSlot The TimeSlot being examined.
-	 * @return False if the TimeSlot is in the range of [11:00, 12:30) on Tuesday (lab or lecture). True otherwise.
+	 * @param slot   The slot to check against.
+	 * @param others The ids of the items to look for.
+	 * @return False if any of the items is assigned to a slot overlapping slot. True otherwise.
 	 */
-	private boolean outsideTuesdayDeadZone(TimeSlot timeSlot)
+	private boolean noAssignedOverlap(int slot, int[] others)
 	{
-		SlotType type = timeSlot.getSlotType();
-		double time = timeSlot.getTime();
-		return !((type == SlotType.TT_LAB || type == SlotType.TT_LEC)
-				&& (time >= 11.0 && time < 12.5));
-	}
-
-	/**
-	 * Checks the special constraint for CPSC 813/913 w.r.t. 313/413. Ensures that if the slot is 813 or 913, then the
-	 * time is 18:00, and there are no overlaps with any section of 313 or 413, resp. Returns true if the course being
-	 * assessed is not one of {CPSC 313, CPSC 413, CPSC 813, CPSC 913}.
-	 * <p>
-	 * Note that this method does not currently check for transitive incompatibility. For example, if given a 913 slot,
-	 * it will check for overlapping 413 sections (and return false if it finds them) but it will not search for
-	 * sections which are incompatible with 413.
-	 *
-	 * @param timeSlot The TimeSlot to possibly assign to.
-	 * @param item     The SlotItem being assigned.
-	 * @return True if the condition is met, false otherwise.
-	 */
-	private boolean satisfiesSpecialOverlap(TimeSlot timeSlot, SlotItem item)
-	{
-		if (!item.getCourseName().equals("CPSC")) return true;
-		int courseNum = item.getCourseNum();
-
-		int counterCourseNum;
-		switch (courseNum)
+		for (int other : others)
 		{
-			case 313:
-				counterCourseNum = 813;
-				break;
-			case 413:
-				counterCourseNum = 913;
-				break;
-			case 813:
-				if (timeSlot.getTime() != 18.0) return false;
-				counterCourseNum = 313;
-				break;
-			case 913:
-				if (timeSlot.getTime() != 18.0) return false;
-				counterCourseNum = 413;
-				break;
-			default:
-				return true;
-		}
-
-		HashSet<SlotItem> overlaps = getAssignedOverlapCourses(timeSlot);
-		for (SlotItem other : overlaps)
-		{
-			if (other.getCourseNum() == counterCourseNum) return false;
+			int otherSlot = get(other);
+			if (otherSlot != -1 && model.overlaps(slot, otherSlot)) return false;
 		}
 
 		return true;
@@ -533,106 +797,58 @@ public class Assignments
 	 */
 	public Evaluated eval(TimeSlot timeSlot, SlotItem item)
 	{
-		int val = evalScore;
-
-		// Check for a change in courseMin or labMin. This will change only if the assignment will put the timeSlot
-		// over its courseMin value, where it wasn't previously. The "default" state of evalScore is that all courses
-		// and labs that have a minimum have not yet met that minimum, so any change to the evalScore here is purely
-		// subtractive.
-		int numAssigned = getNumAssigned(timeSlot);
-		if (numAssigned < timeSlot.getMin())
-		{
-			// Currently below min. Subtract penalty if adding one new item will put us over
-			if (numAssigned + 1 >= timeSlot.getMin())
-			{
-				val -= item.isLecture() ? (Penalties.getInstance().getCourseMin() * Penalties.getInstance().getwMinFilled())
-                        : (Penalties.getInstance().getLabsMin() * Penalties.getInstance().getwMinFilled());
-			}
-		}
-
-		// Check for a change in preferences. The only way the penalty imposed by assignments can go down is if we
-		// removed Assignments. Since all we are going to do is add them, not remove them, the penalty can only increase
-		// in this step, if it changes at all.
-		val += (item.getPreferencesForOtherSlots(timeSlot) * Penalties.getInstance().getwPref());
-
-		// Check for a change in pairs.
-		if (item.hasPairs())
-		{
-			for (SlotItem paired : item.getPairs())
-			{
-				UnfilledPairs unfilledPairs = unfilledPairsMap.get(paired);
-				if ((unfilledPairs != null) && (unfilledPairs.expectsPair(item)))
-				{
-					if (!unfilledPairs.getTimeSlot().equals(timeSlot)) val += (Penalties.getInstance().getNotPaired() * Penalties.getInstance().getwPair());
-				}
-			}
-		}
-
-		// Check for section collisions.
-		if (numAssigned > 0)
-		{
-			// No section collisions if nothing is assigned here
-			for (SlotItem assigned : getAssignment(timeSlot))
-			{
-				if (((item.isLecture() && assigned.isLecture())
-						|| (!item.isLecture() && !assigned.isLecture()))
-						&& item.sameCourse(assigned)
-                        && !item.equals(assigned))
-				{
-					val += (Penalties.getInstance().getSection() * Penalties.getInstance().getwSecDiff());
-				}
-			}
-		}
-
-		return new Evaluated(timeSlot, val);
+		return new Evaluated(timeSlot, evalScore + evalDelta(timeSlot.getId(), item.getId()));
 	}
 
 	/**
-	 * UnfilledPairs nested class
-	 * <p>
-	 * The purpose of this class is to wrap a set of expected (but not yet assigned) paired SlotItems for a given
-	 * SlotItem which *has* already been assigned. Every time we assign something new that has a pair, we check to see
-	 * if it has an unfilled pair waiting (i.e. if the other part of the pair has already been placed) and remove it
-	 * if so. In the process, we check whether the TimeSlot matches up, and if not, we add to the penalty.
-	 * <p>
-	 * This is done so that we can efficiently manage eval scores for pairs without having to iterate through the
-	 * entire set of assignments every time we evaluate.
+	 * Calculates the change to the eval score that assigning the given item to the given slot would cause.
+	 *
+	 * @param slot The id of the slot we may assign to.
+	 * @param item The id of the item being assigned.
+	 * @return The amount the eval score would go up (or down) by.
 	 */
-	private class UnfilledPairs
+	public int evalDelta(int slot, int item)
 	{
-		private TimeSlot timeSlot;
-		private HashSet<SlotItem> expectedPairs;
-
-		UnfilledPairs(TimeSlot timeSlot)
+		Penalties penalties = Penalties.getInstance();
+		int val = 0;
+
+		// Check for a change in courseMin or labMin. This will change only if the assignment brings the slot up to its
+		// courseMin value, where it wasn't previously. The "default" state of evalScore is that all courses and labs
+		// that have a minimum have not yet met that minimum, so any change to the evalScore here is purely
+		// subtractive. numAssigned does not yet count the item, so the penalty is lifted by the min-th item in the
+		// slot (the first, for a minimum of 1).
+		int numAssigned = get(countOffset + slot);
+		int min = model.slotMin[slot];
+		if (numAssigned < min && numAssigned + 1 >= min)
 		{
-			this.timeSlot = timeSlot;
-			expectedPairs = new HashSet<>();
+			// Currently below min, and adding one new item will bring us up to it
+			val -= model.isLecture(item) ? (penalties.getCourseMin() * penalties.getwMinFilled())
+					: (penalties.getLabsMin() * penalties.getwMinFilled());
 		}
 
-		void addPair(SlotItem pairedCourse)
-		{
-			expectedPairs.add(pairedCourse);
-		}
+		// Check for a change in preferences. The only way the penalty imposed by assignments can go down is if we
+		// removed Assignments. Since all we are going to do is add them, not remove them, the penalty can only increase
+		// in this step, if it changes at all.
+		val += (model.getPreferencePenalty(item, slot) * penalties.getwPref());
 
-		TimeSlot getTimeSlot()
+		// Check for a change in pairs. The penalty is charged when the second half of a pair is placed somewhere
+		// other than the first half.
+		for (int paired : model.itemPairs[item])
 		{
-			return timeSlot;
+			int pairedSlot = get(paired);
+			if (pairedSlot != -1 && pairedSlot != slot) val += (penalties.getNotPaired() * penalties.getwPair());
 		}
 
-		boolean resolvePair(SlotItem added)
+		// Check for section collisions. Slots only ever hold one type of item, so everything here is the same type.
+		for (int assigned = get(headOffset + slot); assigned != -1; assigned = get(nextOffset + assigned))
 		{
-			if (expectedPairs.contains(added))
+			if (model.itemCourse[assigned] == model.itemCourse[item] && assigned != item)
 			{
-				expectedPairs.remove(added);
-				return true;
+				val += (penalties.getSection() * penalties.getwSecDiff());
 			}
-			return false;
 		}
 
-		boolean expectsPair(SlotItem other)
-		{
-			return expectedPairs.contains(other);
-		}
+		return val;
 	}
 
     @Override
@@ -642,14 +858,14 @@ public class Assignments
 
         ArrayList<String> outStrings = new ArrayList<>();
 
-		for (TimeSlot timeslot : assignments.keySet())
+		for (int item = 0; item < model.getNumItems(); item++)
 		{
-			String dayTime = timeslot.getTimePair().toString();
-			for (SlotItem s : assignments.get(timeslot)) {
-                String slotItemName = String.format("%-30s", s.toString().replace("[", "").replace("]", ""));
-                String adder = slotItemName + " : " + dayTime;
-                outStrings.add(adder);
-            }
+			if (get(item) == -1) continue;
+
+			String dayTime = model.getSlot(get(item)).getTimePair().toString();
+			String slotItemName = String.format("%-30s", model.getItem(item).toString().replace("[", "").replace("]", ""));
+			String adder = slotItemName + " : " + dayTime;
+			outStrings.add(adder);
 		}
 
         Collections.sort(outStrings);
@@ -674,25 +890,3 @@ public class Assignments
 	}
 
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,289 @@
+package ai.project;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/**
+ * BeamSearch class
+ *
+ * A second way of building schedules, next to the Or-Tree. The Or-Tree search is depth first: it commits to one slot
+ * for an item and only comes back to it once everything below has failed, so a poor early choice (a slot the item
+ * does not prefer, say) is usually kept. This search instead keeps a frontier of many partial Assignments at once,
+ * ranked by their EvalBound (the eval score so far, plus what the unassigned items must still add to it), and always
+ * works on the most promising of them. Departments with a lot of preferences gain the most from this.
+ *
+ * Each step takes a partial Assignments, picks its next item with the VariableOrdering, and makes a child for every
+ * viable slot of that item. A child that leaves some item with no viable slot has no bound, and is dropped straight
+ * away. There are two strategies:
+ *  - BEAM:       breadth first, one item per layer. Only the best beamWidth children of each layer are kept for the
+ *                next, so the search goes down every level exactly once and never backtracks.
+ *  - BEST_FIRST: one priority queue of partial Assignments, lowest bound first. The bound never overestimates, so the
+ *                first complete schedule to come off the queue is the best there is, as long as nothing that could
+ *                have beaten it was thrown away.
+ *
+ * Both are held to a memory cap: the most partial Assignments kept at once (copies share their state until they are
+ * written to, see Assignments, so each one costs about a chunk per item assigned since it was copied). When the cap is
+ * hit, the states with the highest bounds are thrown away. The search is then no longer complete, so failing to find
+ * a schedule does not mean there is none (see isComplete()). A best-first search also gives up once it has expanded
+ * as many states as the cap without finding its schedules, as past that point it is only spreading out wider.
+ *
+ * The same state can be reached by assigning the same items in a different order, so states are told apart by their
+ * Zobrist hash (see Assignments.getHash()) and only the first copy of each is kept.
+ */
+public class BeamSearch
+{
+	public enum Strategy
+	{
+		BEAM,
+		BEST_FIRST
+	}
+
+	// A partial Assignments on the frontier, with its bound and the order it was made in, which breaks ties
+	private static class State implements Comparable<State>
+	{
+		final Assignments assigned;
+		final int bound;
+		final int remaining;
+		final long order;
+
+		State(Assignments assigned, int bound, int remaining, long order)
+		{
+			this.assigned = assigned;
+			this.bound = bound;
+			this.remaining = remaining;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(State other)
+		{
+			// Lower bounds first, then states closer to complete, then older states
+			int cmp = Integer.compare(bound, other.bound);
+			if (cmp == 0) cmp = Integer.compare(remaining, other.remaining);
+			if (cmp == 0) cmp = Long.compare(order, other.order);
+			return cmp;
+		}
+	}
+
+	private final Assignments start;
+	private final Strategy strategy;
+	private final int width;
+	private final int maxStates;
+	private final VariableOrdering ordering;
+	private final EvalBound evalBound;
+
+	// The ids of the items to assign, and buffers for the items still unassigned in a state and an item's slots
+	private final int[] items;
+	private final int numItems;
+	private final int[] free;
+	private final int[] slots;
+
+	private long made;
+
+	// The lowest bound of any state thrown away to keep within the limits; Integer.MAX_VALUE if there were none
+	private int lowestDropped = Integer.MAX_VALUE;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param start      The Assignments to start from (normally the partial assignments). It is not modified.
+	 * @param unassigned The items still to assign.
+	 * @param strategy   Whether to search by beam or best first.
+	 * @param width      The most states kept from one layer to the next by a beam.
+	 * @param maxStates  The most partial Assignments held at once.
+	 */
+	public BeamSearch(Assignments start, Collection<SlotItem> unassigned, Strategy strategy, int width, int maxStates)
+	{
+		ProblemModel model = start.getModel();
+		SearchOptions options = SearchOptions.getInstance();
+
+		this.start = start;
+		this.strategy = strategy;
+		this.width = Math.max(1, Math.min(width, maxStates));
+		this.maxStates = Math.max(1, maxStates);
+		this.ordering = new VariableOrdering(model, options.getVariableOrder(), options.newRandom());
+		this.evalBound = new EvalBound(model);
+
+		int count = 0;
+		items = new int[unassigned.size()];
+		for (SlotItem item : unassigned)
+		{
+			if (start.getSlotId(item.getId()) == -1) items[count++] = item.getId();
+		}
+		free = new int[count];
+		System.arraycopy(items, 0, free, 0, count);
+		numItems = count;
+		slots = new int[model.getNumSlots()];
+	}
+
+	/**
+	 * Runs the search.
+	 *
+	 * @param count The most complete schedules to find.
+	 * @return Up to count complete schedules, lowest eval score first. Empty if none was found, either because there
+	 * is none or because the search was not complete (see isComplete()) or was interrupted.
+	 */
+	public ArrayList<Assignments> search(int count)
+	{
+		Assignments root = new Assignments(start);
+		int bound = evalBound.compute(root, null, free, numItems);
+		if (bound == Integer.MAX_VALUE) return new ArrayList<>();
+
+		State first = new State(root, bound, numItems, made++);
+		return (strategy == Strategy.BEAM) ? searchBeam(first, count) : searchBestFirst(first, count);
+	}
+
+	/**
+	 * Predicate: was nothing thrown away to keep within the beam width or the memory cap? If so, the search was
+	 * exhaustive: an empty result from search() means there is no solution at all.
+	 *
+	 * @return True if no state was thrown away.
+	 */
+	public boolean isComplete()
+	{
+		return lowestDropped == Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Predicate: is the best schedule search() returned known to be the best there is? Only a best-first search can
+	 * tell: it is, unless a state that was thrown away could have led to a better one.
+	 *
+	 * @param best The first schedule search() returned.
+	 * @return True if no better schedule can exist.
+	 */
+	public boolean isProvenOptimal(Assignments best)
+	{
+		return strategy == Strategy.BEST_FIRST && best.getEvalScore() <= lowestDropped;
+	}
+
+	// ------------- Strategies -------------
+
+	private ArrayList<Assignments> searchBeam(State first, int count)
+	{
+		ArrayList<State> layer = new ArrayList<>();
+		layer.add(first);
+
+		for (int depth = 0; depth < numItems; depth++)
+		{
+			if (Thread.currentThread().isInterrupted()) return new ArrayList<>();
+
+			TreeSet<State> next = new TreeSet<>();
+			HashSet<Long> seen = new HashSet<>();
+
+			for (State state : layer)
+			{
+				expand(state, next, seen, width);
+			}
+
+			layer = new ArrayList<>(next);
+			if (layer.isEmpty()) break;
+		}
+
+		ArrayList<Assignments> rv = new ArrayList<>();
+		for (State state : layer)
+		{
+			if (state.remaining > 0 || rv.size() == count) break;
+			rv.add(state.assigned);
+		}
+		return rv;
+	}
+
+	private ArrayList<Assignments> searchBestFirst(State first, int count)
+	{
+		ArrayList<Assignments> rv = new ArrayList<>();
+		TreeSet<State> open = new TreeSet<>();
+		HashSet<Long> seen = new HashSet<>();
+		open.add(first);
+
+		int expanded = 0;
+		while (!open.isEmpty() && rv.size() < count)
+		{
+			if (Thread.currentThread().isInterrupted()) break;
+
+			State state = open.pollFirst();
+			if (state.remaining == 0)
+			{
+				rv.add(state.assigned);
+				continue;
+			}
+
+			// Each expansion can add a state, so past the cap the search has stopped closing in on a schedule. Only
+			// states that would be expanded count towards it; complete ones popped along the way do not.
+			if (expanded == maxStates)
+			{
+				lowestDropped = Math.min(lowestDropped, state.bound);
+				break;
+			}
+
+			// Telling states apart is only there to save work, so the hashes may be forgotten to keep within the cap
+			if (seen.size() > 4 * maxStates) seen.clear();
+
+			expand(state, open, seen, maxStates);
+			expanded++;
+		}
+		return rv;
+	}
+
+	/**
+	 * Makes every child of a state, and adds each one to the frontier if it is one of the best limit states seen so
+	 * far. Children are only copied out of the parent once they are known to be kept.
+	 *
+	 * @param state    The state to expand. Its Assignments is used as scratch space, and is unchanged afterwards.
+	 * @param frontier The states kept so far, best first.
+	 * @param seen     The hashes of the states already made, to leave out states reached a second time.
+	 * @param limit    The most states the frontier may hold.
+	 */
+	private void expand(State state, TreeSet<State> frontier, HashSet<Long> seen, int limit)
+	{
+		Assignments assigned = state.assigned;
+
+		int numFree = 0;
+		for (int i = 0; i < numItems; i++)
+		{
+			if (assigned.getSlotId(items[i]) == -1) free[numFree++] = items[i];
+		}
+
+		int chosen = ordering.select(free, numFree, assigned, null);
+		int item = free[chosen];
+		free[chosen] = free[--numFree];
+
+		int numSlots = assigned.getViableSlotIds(item, slots);
+		for (int i = 0; i < numSlots; i++)
+		{
+			int mark = assigned.getTrailMark();
+			assigned.addAssignment(slots[i], item);
+
+			int bound = evalBound.compute(assigned, null, free, numFree);
+			if (bound != Integer.MAX_VALUE && seen.add(assigned.getHash())
+					&& makesTheCut(frontier, bound, numFree, limit))
+			{
+				frontier.add(new State(new Assignments(assigned), bound, numFree, made++));
+
+				if (frontier.size() > limit)
+				{
+					State worst = frontier.pollLast();
+					lowestDropped = Math.min(lowestDropped, worst.bound);
+				}
+			}
+
+			assigned.undoTo(mark);
+		}
+	}
+
+	/**
+	 * Predicate: would a new state with this bound be kept? It is if the frontier has room, or if it is better than
+	 * the worst state in it, which it then pushes out. A state that is not kept counts as thrown away.
+	 */
+	private boolean makesTheCut(TreeSet<State> frontier, int bound, int remaining, int limit)
+	{
+		if (frontier.size() < limit) return true;
+
+		State worst = frontier.last();
+		if (bound < worst.bound || (bound == worst.bound && remaining < worst.remaining)) return true;
+
+		lowestDropped = Math.min(lowestDropped, bound);
+		return false;
+	}
+}
@@ -0,0 +1,156 @@
+package ai.project;
+
+/**
+ * Bits Class
+ * <p>
+ * Static helpers for using a plain long[] as a fixed-size bitset over dense ids (slot ids or item ids, see
+ * ProblemModel). java.util.BitSet would work as well, but it resizes itself and hides its words, and the search code
+ * wants to AND masks together a word at a time without any allocation.
+ */
+public final class Bits
+{
+	private Bits()
+	{
+	}
+
+	/**
+	 * Creates an empty bitset large enough to hold ids [0, size).
+	 *
+	 * @param size The number of ids the bitset must be able to hold.
+	 * @return A zeroed long[] with enough words for size bits.
+	 */
+	public static long[] create(int size)
+	{
+		return new long[(size + 63) >>> 6];
+	}
+
+	public static boolean get(long[] bits, int i)
+	{
+		return (bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	public static void set(long[] bits, int i)
+	{
+		bits[i >>> 6] |= (1L << i);
+	}
+
+	public static void clear(long[] bits, int i)
+	{
+		bits[i >>> 6] &= ~(1L << i);
+	}
+
+	/**
+	 * Predicate: do the two bitsets have any bit in common?
+	 *
+	 * @param a One bitset.
+	 * @param b Another bitset of the same size.
+	 * @return True if (a AND b) is non-empty.
+	 */
+	public static boolean intersects(long[] a, long[] b)
+	{
+		for (int w = 0; w < a.length; w++)
+		{
+			if ((a[w] & b[w]) != 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Sets every bit in into that is set in mask (into = into OR mask).
+	 *
+	 * @param into The bitset to modify.
+	 * @param mask The bits to set.
+	 */
+	public static void or(long[] into, long[] mask)
+	{
+		for (int w = 0; w < into.length; w++)
+		{
+			into[w] |= mask[w];
+		}
+	}
+
+	/**
+	 * Clears every bit in into that is set in mask (into = into AND NOT mask).
+	 *
+	 * @param into The bitset to modify.
+	 * @param mask The bits to clear.
+	 */
+	public static void andNot(long[] into, long[] mask)
+	{
+		for (int w = 0; w < into.length; w++)
+		{
+			into[w] &= ~mask[w];
+		}
+	}
+
+	/**
+	 * Clears every bit outside the range [from, to].
+	 *
+	 * @param bits The bitset to modify.
+	 * @param from The lowest index to keep.
+	 * @param to   The highest index to keep.
+	 */
+	public static void retainRange(long[] bits, int from, int to)
+	{
+		for (int w = 0; w < bits.length; w++)
+		{
+			bits[w] &= rangeMask(w, from, to);
+		}
+	}
+
+	/**
+	 * Gets the bits of one word of a bitset that lie in the range [from, to].
+	 *
+	 * @param w    The index of the word.
+	 * @param from The lowest index in the range.
+	 * @param to   The highest index in the range.
+	 * @return A mask of the word's bits that are in the range.
+	 */
+	public static long rangeMask(int w, int from, int to)
+	{
+		int first = w << 6;
+		if (to < first || from > first + 63) return 0;
+
+		long mask = -1L;
+		if (from > first) mask &= -1L << from;
+		if (to < first + 63) mask &= -1L >>> (63 - (to - first));
+		return mask;
+	}
+
+	/**
+	 * Counts the set bits.
+	 *
+	 * @param bits The bitset to count.
+	 * @return The number of set bits.
+	 */
+	public static int cardinality(long[] bits)
+	{
+		int count = 0;
+		for (long word : bits)
+		{
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the first set bit at or after the given index.
+	 *
+	 * @param bits The bitset to search.
+	 * @param from The index to start searching from.
+	 * @return The index of the next set bit, or -1 if there is none.
+	 */
+	public static int nextSetBit(long[] bits, int from)
+	{
+		int w = from >>> 6;
+		if (w >= bits.length) return -1;
+
+		long word = bits[w] & (-1L << from);
+		while (true)
+		{
+			if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == bits.length) return -1;
+			word = bits[w];
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package ai.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * DecomposedSearch class
+ *
+ * Splits the search into independent sub-problems and solves them in parallel. Two unassigned items are connected in
+ * the constraint graph if a hard constraint links them: incompatibility, pairs, lecture/lab and 813/913 conflicts, and
+ * symmetry classes. Every 500-level item is connected to every other, as any two of them may not share a slot. Each
+ * connected component can then be searched on its own, with its own TrailSearch on its own copy of the Assignments,
+ * and the results merged back together.
+ *
+ * The one thing components still share is slot capacity. A slot is contended if items from more than one component
+ * have it in their domain, and there are more of them than it has room left for. A component whose items can only go
+ * in uncontended slots is fully independent: whatever it does, there is room for it. The components that do share
+ * contended slots are coupled, and the coordinator splits the room left in each contended slot between them, in
+ * proportion to how many of their items could go there, so their schedules can never overfill a slot when merged.
+ *
+ * A quota can be too tight for a component that would have fit in a different split, so if a coupled component fails
+ * with its quota, every coupled component is searched again together, as one sub-problem with the full capacities.
+ * Only that fallback (or an independent component) failing means there is no solution.
+ *
+ * Only feasibility is split up this way. Some of the eval score (section and minimum penalties) depends on more than
+ * one component, so it is simply worked out on the merged Assignments.
+ */
+public class DecomposedSearch
+{
+	// Threads for the sub-problems, shared by every DecomposedSearch. Daemon threads, so they never keep the program
+	// running.
+	private static ExecutorService pool;
+
+	private final Department department;
+	private final ProblemModel model;
+	private final Assignments assigned;
+	private final Random rand;
+
+	// The items in each component, the slot limits each is searched with (null for the full capacities), and whether
+	// it is coupled to others through contended slots
+	private final ArrayList<int[]> components = new ArrayList<>();
+	private final ArrayList<int[]> limits = new ArrayList<>();
+	private final ArrayList<Boolean> coupled = new ArrayList<>();
+
+	/**
+	 * Constructor. Builds the constraint graph and works out the components and their quotas.
+	 *
+	 * @param department The Department being scheduled.
+	 * @param assigned   The Assignments to search from. This is only modified if the search succeeds, in which case
+	 *                   it holds the solution.
+	 * @param unassigned The items still to assign.
+	 * @param rand       Random source for the search, if it is not split up.
+	 */
+	public DecomposedSearch(Department department, Assignments assigned, Iterable<SlotItem> unassigned, Random rand)
+	{
+		this.department = department;
+		this.model = assigned.getModel();
+		this.assigned = assigned;
+		this.rand = rand;
+
+		int numItems = model.getNumItems();
+		boolean[] free = new boolean[numItems];
+		for (SlotItem item : unassigned)
+		{
+			free[item.getId()] = (assigned.getSlotId(item.getId()) == -1);
+		}
+
+		// Union-find over the unassigned items
+		int[] parent = new int[numItems];
+		for (int item = 0; item < numItems; item++)
+		{
+			parent[item] = item;
+		}
+
+		int last500 = -1;
+		for (int item = 0; item < numItems; item++)
+		{
+			if (!free[item]) continue;
+
+			union(parent, free, item, model.itemIncompatible[item]);
+			union(parent, free, item, model.itemPairs[item]);
+			union(parent, free, item, model.itemLectureLabConflicts[item]);
+			union(parent, free, item, model.itemSpecialConflicts[item]);
+			if (model.itemSymmetryClass[item] != null) union(parent, free, item, model.itemSymmetryClass[item]);
+
+			if (model.item500Level[item])
+			{
+				if (last500 != -1) union(parent, item, last500);
+				last500 = item;
+			}
+		}
+
+		// Gather the components, in order of their lowest item
+		int[] componentOf = new int[numItems];
+		int[] sizes = new int[numItems];
+		Arrays.fill(componentOf, -1);
+		int numComponents = 0;
+		for (int item = 0; item < numItems; item++)
+		{
+			if (!free[item]) continue;
+
+			int root = find(parent, item);
+			if (componentOf[root] == -1) componentOf[root] = numComponents++;
+			componentOf[item] = componentOf[root];
+			sizes[componentOf[item]]++;
+		}
+
+		for (int c = 0; c < numComponents; c++)
+		{
+			components.add(new int[sizes[c]]);
+		}
+		Arrays.fill(sizes, 0);
+		for (int item = 0; item < numItems; item++)
+		{
+			if (free[item]) components.get(componentOf[item])[sizes[componentOf[item]]++] = item;
+		}
+
+		splitCapacity(componentOf, numComponents);
+	}
+
+	/**
+	 * Gets the number of independent sub-problems the search was split into.
+	 *
+	 * @return The number of components in the constraint graph.
+	 */
+	public int getNumComponents()
+	{
+		return components.size();
+	}
+
+	/**
+	 * Runs the search. If there is only one component, this is the same as running a TrailSearch on the Assignments.
+	 *
+	 * @return True if every item was assigned, false if there is no solution or the thread was interrupted.
+	 */
+	public boolean search()
+	{
+		if (components.size() <= 1)
+		{
+			int[] items = components.isEmpty() ? new int[0] : components.get(0);
+			return new TrailSearch(department, assigned, itemsOf(items), rand).search();
+		}
+
+		// Copies are made here rather than on the worker threads, as copying an Assignments touches the original
+		ArrayList<Assignments> results = new ArrayList<>();
+		ArrayList<Future<Boolean>> futures = new ArrayList<>();
+		for (int c = 0; c < components.size(); c++)
+		{
+			Assignments copy = (limits.get(c) == null) ? new Assignments(assigned) : new Assignments(assigned, limits.get(c));
+			ArrayList<SlotItem> items = itemsOf(components.get(c));
+			Random random = SearchOptions.getInstance().newRandom();
+
+			results.add(copy);
+			futures.add(getPool().submit(() -> new TrailSearch(department, copy, items, random).search()));
+		}
+
+		boolean retryCoupled = false;
+		try
+		{
+			for (int c = 0; c < futures.size(); c++)
+			{
+				if (futures.get(c).get()) continue;
+
+				// An independent component with no solution means the whole problem has none
+				if (!coupled.get(c) || Thread.currentThread().isInterrupted())
+				{
+					cancel(futures);
+					return false;
+				}
+				retryCoupled = true;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e)
+		{
+			cancel(futures);
+			throw new RuntimeException(e.getCause());
+		}
+
+		Assignments fallback = null;
+		if (retryCoupled)
+		{
+			// Search the coupled components again as one, without quotas
+			ArrayList<SlotItem> items = new ArrayList<>();
+			for (int c = 0; c < components.size(); c++)
+			{
+				if (coupled.get(c)) items.addAll(itemsOf(components.get(c)));
+			}
+
+			fallback = new Assignments(assigned);
+			if (!new TrailSearch(department, fallback, items, rand).search()) return false;
+		}
+
+		// Merge every component's schedule back into the Assignments
+		for (int c = 0; c < components.size(); c++)
+		{
+			Assignments from = (retryCoupled && coupled.get(c)) ? fallback : results.get(c);
+			for (int item : components.get(c))
+			{
+				assigned.addAssignment(from.getSlotId(item), item);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds the contended slots and splits the room left in each of them between the components that could use it.
+	 * Fills in limits and coupled.
+	 *
+	 * @param componentOf   The component of each unassigned item.
+	 * @param numComponents The number of components.
+	 */
+	private void splitCapacity(int[] componentOf, int numComponents)
+	{
+		int numSlots = model.getNumSlots();
+		int[][] demand = new int[numComponents][numSlots];
+		int[] total = new int[numSlots];
+		long[] mask = Bits.create(numSlots);
+
+		for (int c = 0; c < numComponents; c++)
+		{
+			for (int item : components.get(c))
+			{
+				assigned.getViableSlotMask(item, mask);
+				for (int slot = Bits.nextSetBit(mask, 0); slot != -1; slot = Bits.nextSetBit(mask, slot + 1))
+				{
+					demand[c][slot]++;
+					total[slot]++;
+				}
+			}
+		}
+
+		for (int c = 0; c < numComponents; c++)
+		{
+			limits.add(null);
+			coupled.add(false);
+		}
+
+		for (int slot = 0; slot < numSlots; slot++)
+		{
+			int room = assigned.getSlotMax(slot) - assigned.getNumAssigned(slot);
+			if (total[slot] <= room) continue;
+
+			// A slot only one component can use is that component's alone, however full it gets
+			int users = 0;
+			for (int c = 0; c < numComponents; c++)
+			{
+				if (demand[c][slot] > 0) users++;
+			}
+			if (users < 2) continue;
+
+			// Contended: each component gets its share of the room, rounded down, and what is left over goes to the
+			// components with the most demand still unmet
+			int given = 0;
+			int[] share = new int[numComponents];
+			for (int c = 0; c < numComponents; c++)
+			{
+				share[c] = (int) ((long) room * demand[c][slot] / total[slot]);
+				given += share[c];
+			}
+			while (given < room)
+			{
+				int best = -1;
+				for (int c = 0; c < numComponents; c++)
+				{
+					if (best == -1 || demand[c][slot] - share[c] > demand[best][slot] - share[best]) best = c;
+				}
+				share[best]++;
+				given++;
+			}
+
+			for (int c = 0; c < numComponents; c++)
+			{
+				if (demand[c][slot] == 0) continue;
+
+				if (limits.get(c) == null)
+				{
+					int[] limit = new int[numSlots];
+					for (int s = 0; s < numSlots; s++)
+					{
+						limit[s] = assigned.getSlotMax(s);
+					}
+					limits.set(c, limit);
+					coupled.set(c, true);
+				}
+				limits.get(c)[slot] = assigned.getNumAssigned(slot) + share[c];
+			}
+		}
+	}
+
+	private ArrayList<SlotItem> itemsOf(int[] ids)
+	{
+		ArrayList<SlotItem> rv = new ArrayList<>();
+		for (int id : ids)
+		{
+			rv.add(model.getItem(id));
+		}
+		return rv;
+	}
+
+	private static void cancel(ArrayList<Future<Boolean>> futures)
+	{
+		for (Future<Boolean> future : futures)
+		{
+			future.cancel(true);
+		}
+	}
+
+	private static synchronized ExecutorService getPool()
+	{
+		if (pool == null)
+		{
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task ->
+			{
+				Thread thread = new Thread(task, "DecomposedSearch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return pool;
+	}
+
+	// ------------- Union-Find -------------
+
+	private static void union(int[] parent, boolean[] free, int item, int[] others)
+	{
+		for (int other : others)
+		{
+			if (free[other]) union(parent, item, other);
+		}
+	}
+
+	private static void union(int[] parent, int a, int b)
+	{
+		parent[find(parent, a)] = find(parent, b);
+	}
+
+	private static int find(int[] parent, int item)
+	{
+		while (parent[item] != item)
+		{
+			parent[item] = parent[parent[item]];
+			item = parent[item];
+		}
+		return item;
+	}
+}
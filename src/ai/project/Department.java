@@ -2,6 +2,8 @@ package ai.project;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Department Class
@@ -15,6 +17,9 @@ import java.util.HashSet;
  * <p>
  * This class includes methods to add time slots, lectures, and labs to the internal tables.
  * There are also methods to set constraints on courses, and to get various subsets of the data contained.
+ * <p>
+ * Once everything has been added, compile() builds the ProblemModel (dense ids and flattened attributes) that the
+ * search works from.
  */
 
 public class Department
@@ -23,14 +28,18 @@ public class Department
 
 	private TimeTable timeTable;
 	private CourseTable courseTable;
+	private LinkedHashMap<SlotItem, TimeSlot> partials;
 	private Assignments partialAssignments;
+	private ProblemModel model;
+	private TranspositionTable transpositions;
 
 	/**
 	 * Base constructor. Sets name and initializes tables.
 	 * It's not yet clear how penalties will be taken as input, so this currently creates a placeholder
 	 * Penalties object with all 4 penalty types set to 0.
 	 * <p>
-	 * Partial Assignments are not created here, because they rely on the TimeTable having already been made.
+	 * Partial Assignments are not created here, because they rely on the ProblemModel having already been compiled.
+	 * Until then they are only recorded.
 	 *
 	 * @param departmentName The name of the new department.
 	 */
@@ -39,6 +48,7 @@ public class Department
 		this.departmentName = departmentName;
 		timeTable = new TimeTable();
 		courseTable = new CourseTable();
+		partials = new LinkedHashMap<>();
 	}
 
 	// ------------- Data Adders -------------
@@ -108,19 +118,13 @@ public class Department
 	 */
 	public void addPartialLecture(String courseName, int courseNum, int lecNum, String day, String time)
 	{
-		if (partialAssignments == null)
-		{
-			partialAssignments = new Assignments(timeTable);
-		}
 		TimeSlot slot = timeTable.getSlot(day, time, false /*isLab*/);
 		SlotItem course;
 		course = courseTable.getLecture(courseName, courseNum, lecNum);
 
-
-
 		if ((slot != null) && (course != null))
 		{
-			partialAssignments.addAssignment(slot, course);
+			partials.put(course, slot);
 		}
 	}
 
@@ -137,20 +141,33 @@ public class Department
 	 */
 	public void addPartialLab(String courseName, int courseNum, int labNum, String day, String time)
 	{
-		if (partialAssignments == null)
-		{
-			partialAssignments = new Assignments(timeTable);
-		}
 		TimeSlot slot = timeTable.getSlot(day, time, true /*isLab*/);
 		SlotItem course;
 		course = courseTable.getLab(courseName, courseNum, labNum);
 
 		if ((slot != null) && (course != null))
 		{
-			partialAssignments.addAssignment(slot, course);
+			partials.put(course, slot);
 		}
 	}
 
+	/**
+	 * Adds an assignment that every solution is known to contain (see Preprocessor) to the partial assignments. Unlike
+	 * addPartialLecture() and addPartialLab(), this is meant for after the model has been compiled, and does not
+	 * recompile it.
+	 *
+	 * @param item The SlotItem being assigned.
+	 * @param slot The TimeSlot it has to go in.
+	 */
+	public void addForcedAssignment(SlotItem item, TimeSlot slot)
+	{
+		getModel();
+
+		partials.put(item, slot);
+		if (partialAssignments == null) partialAssignments = new Assignments(model);
+		partialAssignments.addAssignment(slot, item);
+	}
+
 	// ------------- Constraint Adders -------------
 
 	/**
@@ -277,6 +294,59 @@ public class Department
 	}
 
 
+	// ------------- Compilation -------------
+
+	/**
+	 * Builds the compiled ProblemModel for this Department, assigning ids to all TimeSlots and SlotItems, and builds
+	 * the partial assignments on top of it. This should be called once parsing is finished; the model does not track
+	 * changes made to the Department afterwards.
+	 *
+	 * @return The newly compiled model.
+	 */
+	public ProblemModel compile()
+	{
+		model = new ProblemModel(this);
+		transpositions = null;
+
+		partialAssignments = null;
+		if (!partials.isEmpty())
+		{
+			partialAssignments = new Assignments(model);
+			for (Map.Entry<SlotItem, TimeSlot> partial : partials.entrySet())
+			{
+				partialAssignments.addAssignment(partial.getValue(), partial.getKey());
+			}
+		}
+
+		return model;
+	}
+
+	/**
+	 * Gets the compiled ProblemModel for this Department, compiling it first if that has not been done yet.
+	 *
+	 * @return The compiled model.
+	 */
+	public ProblemModel getModel()
+	{
+		if (model == null) compile();
+		return model;
+	}
+
+	/**
+	 * Gets the TranspositionTable shared by every search on this Department, creating it the first time it is asked
+	 * for. It is thrown away whenever the model is recompiled.
+	 *
+	 * @return The shared table, or null if SearchOptions turns the table off.
+	 */
+	public synchronized TranspositionTable getTranspositionTable()
+	{
+		int size = SearchOptions.getInstance().getTranspositionTableSize();
+		if (size <= 0) return null;
+
+		if (transpositions == null) transpositions = new TranspositionTable(size);
+		return transpositions;
+	}
+
 	// ------------- Data Getters -------------
 
 	/**
@@ -402,6 +472,17 @@ public class Department
 		return courseTable.getAllCourses();
 	}
 
+	/**
+	 * Predicate: was a SlotItem given a partial assignment in the input?
+	 *
+	 * @param item The SlotItem to look up.
+	 * @return True if the item is partially assigned.
+	 */
+	public boolean hasPartialAssignment(SlotItem item)
+	{
+		return partials.containsKey(item);
+	}
+
 	/**
 	 * Retrieves a copy of the partial assignments managed by this Department. This may be somewhat inefficient if
 	 * there are a large number of partial assignments, so use with caution.
@@ -410,6 +491,8 @@ public class Department
 	 */
 	public Assignments getPartialAssignments()
 	{
+		getModel();
+
 		if (partialAssignments != null)
 			return new Assignments(partialAssignments);
 
@@ -0,0 +1,413 @@
+package ai.project;
+
+import java.util.Arrays;
+
+/**
+ * Domains class
+ *
+ * The live domain of every item during a search: the set of slots it could still be assigned to, given what has been
+ * assigned so far. Each domain starts as the item's viable slot mask (see Assignments.getViableSlotMask()) and is
+ * narrowed every time something is assigned. This is forward checking: as soon as any unassigned item is left with an
+ * empty domain, the assignment that caused it is known to be a dead end, and the search can back out of it without
+ * ever reaching that item.
+ *
+ * Narrowing only ever clears bits, so every change is recorded as (item, word, old word) on an undo trail, the same
+ * way Assignments records its assignments. getTrailMark() and undoTo() work the same way as they do there.
+ *
+ * Since every hard constraint in constr() is either static or between two items, a live domain always equals the
+ * item's viable slot mask for the current Assignments.
+ *
+ * If asked to, Domains also keeps track of why each domain was narrowed: the culprits of an item are the assigned
+ * items whose assignments removed slots from its domain (for a slot that filled up, every item in that slot). This is
+ * what lets the search backjump (see TrailSearch). Culprit sets only ever grow, and are recorded on the same undo trail.
+ *
+ * A search over only some of the unassigned items (one component of a DecomposedSearch, say) can have Domains keep
+ * just those items. The others are left out entirely: their domains are empty, never narrowed, and never count as a
+ * wipeout, since it is not this search's job to place them.
+ */
+public class Domains
+{
+	private final ProblemModel model;
+	private final Assignments assigned;
+
+	// Live domain of each item, indexed by item id. Only meaningful for unassigned items.
+	private final long[][] domain;
+
+	// The items whose domains are kept, as a bitset over item ids; null if it is every item
+	private final long[] tracked;
+
+	// Culprits of each item, as a bitset over item ids; null if culprits are not being tracked
+	private final long[][] culprits;
+
+	// The first item whose domain was emptied by the last call to assign(), or -1
+	private int wipedOut = -1;
+
+	// Undo trail, as (row, word index) pairs in trailIndex and the old word in trailWord. Rows below the number of
+	// items are domains; the rest are culprit sets, offset by the number of items.
+	private int[] trailIndex;
+	private long[] trailWord;
+	private int trailSize;
+
+	/**
+	 * Constructor. Sets up the domain of every item from the current state of the Assignments.
+	 *
+	 * @param assigned      The Assignments being searched on. Domains reads from it, but never modifies it.
+	 * @param trackCulprits True to keep track of the culprits of each item.
+	 */
+	public Domains(Assignments assigned, boolean trackCulprits)
+	{
+		this(assigned, trackCulprits, null, 0);
+	}
+
+	/**
+	 * Constructor. Sets up the domains of only the given items from the current state of the Assignments.
+	 *
+	 * @param assigned      The Assignments being searched on. Domains reads from it, but never modifies it.
+	 * @param trackCulprits True to keep track of the culprits of each item.
+	 * @param items         Buffer holding the ids of the items to keep domains for, or null for every item.
+	 * @param count         The number of ids in items.
+	 */
+	public Domains(Assignments assigned, boolean trackCulprits, int[] items, int count)
+	{
+		this.model = assigned.getModel();
+		this.assigned = assigned;
+
+		if (items == null)
+		{
+			tracked = null;
+		}
+		else
+		{
+			tracked = Bits.create(model.getNumItems());
+			for (int i = 0; i < count; i++)
+			{
+				Bits.set(tracked, items[i]);
+			}
+		}
+
+		domain = new long[model.getNumItems()][];
+		for (int item = 0; item < domain.length; item++)
+		{
+			domain[item] = Bits.create(model.getNumSlots());
+			if (assigned.getSlotId(item) == -1 && isTracked(item)) assigned.getViableSlotMask(item, domain[item]);
+		}
+
+		culprits = trackCulprits ? new long[domain.length][] : null;
+		if (trackCulprits)
+		{
+			for (int item = 0; item < domain.length; item++)
+			{
+				culprits[item] = Bits.create(domain.length);
+			}
+		}
+
+		trailIndex = new int[128];
+		trailWord = new long[64];
+	}
+
+	/**
+	 * Gets the live domain of an item. The returned array is shared and must not be modified.
+	 *
+	 * @param item The id of the item.
+	 * @return The bitset of slots the item can still be assigned to.
+	 */
+	public long[] get(int item)
+	{
+		return domain[item];
+	}
+
+	/**
+	 * Predicate: is the domain of this item being kept?
+	 *
+	 * @param item The id of the item.
+	 * @return True if Domains was set up for every item, or for a set of items that includes this one.
+	 */
+	public boolean isTracked(int item)
+	{
+		return tracked == null || Bits.get(tracked, item);
+	}
+
+	/**
+	 * Gets the culprits of an item: the items whose assignments have removed slots from its domain. The returned array
+	 * is shared and must not be modified.
+	 *
+	 * @param item The id of the item.
+	 * @return Bitset over item ids of the item's culprits, or null if culprits are not being tracked.
+	 */
+	public long[] getCulprits(int item)
+	{
+		return (culprits == null) ? null : culprits[item];
+	}
+
+	/**
+	 * Gets the item whose domain was emptied by the last call to assign().
+	 *
+	 * @return The id of the first item to lose its last slot, or -1 if the last assign() left every domain non-empty.
+	 */
+	public int getWipedOut()
+	{
+		return wipedOut;
+	}
+
+	/**
+	 * Counts the slots left in an item's live domain.
+	 *
+	 * @param item The id of the item.
+	 * @return The number of slots the item can still be assigned to.
+	 */
+	public int size(int item)
+	{
+		int count = 0;
+		for (long word : domain[item])
+		{
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Predicate: does any unassigned item (of those being kept) have an empty domain?
+	 *
+	 * @return True if some unassigned item has nowhere left to go.
+	 */
+	public boolean hasWipeout()
+	{
+		for (int item = 0; item < domain.length; item++)
+		{
+			if (assigned.getSlotId(item) == -1 && isTracked(item) && isEmpty(item)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Narrows the domains of the unassigned items (of those being kept) after an item has been assigned to a slot. This must be called
+	 * after the assignment has been added to the Assignments.
+	 * <p>
+	 * Each of the following loses slots:
+	 * - Items incompatible with the item lose the slot.
+	 * - Conflicting lectures/labs and 813/913 counterparts lose every slot overlapping the slot.
+	 * - If the item is 500-level, every other 500-level item loses the slot.
+	 * - If the slot is now full, every item loses it.
+	 * - Items in the same symmetry class lose every slot on the wrong side of the slot.
+	 *
+	 * @param item The id of the item just assigned.
+	 * @param slot The id of the slot it was assigned to.
+	 * @return False if some unassigned item's domain became empty, true otherwise. The narrowing is not undone either
+	 * way; use undoTo() for that.
+	 */
+	public boolean assign(int item, int slot)
+	{
+		boolean ok = true;
+		wipedOut = -1;
+
+		for (int other : model.itemIncompatible[item])
+		{
+			ok &= clear(other, slot, item);
+		}
+
+		long[] overlap = model.slotOverlap[slot];
+		for (int other : model.itemLectureLabConflicts[item])
+		{
+			ok &= andNot(other, overlap, item);
+		}
+		for (int other : model.itemSpecialConflicts[item])
+		{
+			ok &= andNot(other, overlap, item);
+		}
+
+		boolean isLecture = model.isLecture(item);
+		int first = isLecture ? 0 : model.getNumLectures();
+		int end = isLecture ? model.getNumLectures() : model.getNumItems();
+
+		if (assigned.getNumAssigned(slot) >= assigned.getSlotMax(slot))
+		{
+			for (int other = first; other < end; other++)
+			{
+				ok &= clear(other, slot, -1 - slot);
+			}
+		}
+		else if (model.item500Level[item])
+		{
+			for (int other = first; other < end; other++)
+			{
+				if (model.item500Level[other]) ok &= clear(other, slot, item);
+			}
+		}
+
+		int[] group = model.itemSymmetryClass[item];
+		if (group != null)
+		{
+			int rank = model.itemSymmetryRank[item];
+			for (int i = 0; i < group.length; i++)
+			{
+				if (i < rank) ok &= retainRange(group[i], 0, slot, item);
+				else if (i > rank) ok &= retainRange(group[i], slot, model.getNumSlots() - 1, item);
+			}
+		}
+
+		return ok;
+	}
+
+	/**
+	 * Gets a mark for the current position of the undo trail.
+	 *
+	 * @return The current trail position.
+	 */
+	public int getTrailMark()
+	{
+		return trailSize;
+	}
+
+	/**
+	 * Restores every domain changed since the given trail mark was taken.
+	 *
+	 * @param mark A mark previously returned by getTrailMark().
+	 */
+	public void undoTo(int mark)
+	{
+		while (trailSize > mark)
+		{
+			trailSize--;
+			int row = trailIndex[2 * trailSize];
+			long[] bits = (row < domain.length) ? domain[row] : culprits[row - domain.length];
+			bits[trailIndex[2 * trailSize + 1]] = trailWord[trailSize];
+		}
+	}
+
+	private boolean isEmpty(int item)
+	{
+		for (long word : domain[item])
+		{
+			if (word != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes one slot from an unassigned item's domain.
+	 *
+	 * @param cause The id of the item responsible, or (-1 - slot) if it is every item in that slot.
+	 * @return False if the item's domain is now empty, true otherwise (including if the item is assigned or not kept).
+	 */
+	private boolean clear(int item, int slot, int cause)
+	{
+		if (assigned.getSlotId(item) != -1 || !isTracked(item)) return true;
+
+		int w = slot >>> 6;
+		long old = domain[item][w];
+		if ((old & (1L << slot)) == 0) return true;
+
+		record(item, w, old);
+		domain[item][w] = old & ~(1L << slot);
+		blame(item, cause);
+		return checkEmpty(item);
+	}
+
+	/**
+	 * Removes a set of slots from an unassigned item's domain.
+	 *
+	 * @param cause The id of the item responsible.
+	 * @return False if the item's domain is now empty, true otherwise (including if the item is assigned or not kept).
+	 */
+	private boolean andNot(int item, long[] mask, int cause)
+	{
+		if (assigned.getSlotId(item) != -1 || !isTracked(item)) return true;
+
+		long[] bits = domain[item];
+		boolean any = false;
+		for (int w = 0; w < bits.length; w++)
+		{
+			long old = bits[w];
+			if ((old & mask[w]) == 0) continue;
+
+			record(item, w, old);
+			bits[w] = old & ~mask[w];
+			any = true;
+		}
+		if (!any) return true;
+
+		blame(item, cause);
+		return checkEmpty(item);
+	}
+
+	/**
+	 * Removes every slot outside a range from an unassigned item's domain.
+	 *
+	 * @param cause The id of the item responsible.
+	 * @return False if the item's domain is now empty, true otherwise (including if the item is assigned or not kept).
+	 */
+	private boolean retainRange(int item, int from, int to, int cause)
+	{
+		if (assigned.getSlotId(item) != -1 || !isTracked(item)) return true;
+
+		long[] bits = domain[item];
+		boolean any = false;
+		for (int w = 0; w < bits.length; w++)
+		{
+			long old = bits[w];
+			long kept = old & Bits.rangeMask(w, from, to);
+			if (kept == old) continue;
+
+			record(item, w, old);
+			bits[w] = kept;
+			any = true;
+		}
+		if (!any) return true;
+
+		blame(item, cause);
+		return checkEmpty(item);
+	}
+
+	private boolean checkEmpty(int item)
+	{
+		if (!isEmpty(item)) return true;
+
+		if (wipedOut == -1) wipedOut = item;
+		return false;
+	}
+
+	/**
+	 * Adds to an item's culprits, if they are being tracked.
+	 *
+	 * @param item  The id of the item whose domain was narrowed.
+	 * @param cause The id of the item responsible, or (-1 - slot) if it is every item in that slot.
+	 */
+	private void blame(int item, int cause)
+	{
+		if (culprits == null) return;
+
+		if (cause >= 0)
+		{
+			blameOne(item, cause);
+			return;
+		}
+
+		for (int other = assigned.getFirstInSlot(-1 - cause); other != -1; other = assigned.getNextInSlot(other))
+		{
+			blameOne(item, other);
+		}
+	}
+
+	private void blameOne(int item, int cause)
+	{
+		int w = cause >>> 6;
+		long old = culprits[item][w];
+		if ((old & (1L << cause)) != 0) return;
+
+		record(domain.length + item, w, old);
+		culprits[item][w] = old | (1L << cause);
+	}
+
+	private void record(int row, int w, long old)
+	{
+		if (trailSize == trailWord.length)
+		{
+			trailWord = Arrays.copyOf(trailWord, trailSize * 2);
+			trailIndex = Arrays.copyOf(trailIndex, trailSize * 4);
+		}
+
+		trailIndex[2 * trailSize] = row;
+		trailIndex[2 * trailSize + 1] = w;
+		trailWord[trailSize++] = old;
+	}
+}
@@ -0,0 +1,178 @@
+package ai.project;
+
+import java.util.Arrays;
+
+/**
+ * EvalBound class
+ *
+ * Computes a lower bound on the eval score of any complete schedule that can be reached from a partial Assignments.
+ * The bound is admissible (it never overestimates), so the branch-and-bound search can safely cut off any partial
+ * Assignments whose bound is no better than the best schedule found so far.
+ *
+ * The bound is the current eval score, adjusted by what the unassigned items must still add to (or can still take
+ * away from) it:
+ *  1. Min-fill: every slot still under its minimum carries its penalty in the eval score, but some of those may yet
+ *     be met. Only as many can be met as the unassigned items of that type can fill, smallest shortfall first, so at
+ *     most that many penalties are taken back off.
+ *  2. Each unassigned item has to go somewhere in its domain. Wherever it goes it pays its preference penalty, a
+ *     section penalty for every section of its course already in that slot, and a pair penalty for every assigned
+ *     pair partner in a different slot. The cheapest slot in its domain is added.
+ *  3. Two unassigned pair partners with no slot in common are bound to be apart, so that pair penalty is added.
+ */
+public class EvalBound
+{
+	private final ProblemModel model;
+
+	// Used when no live Domains are kept
+	private long[] scratch;
+	private long[] scratchOther;
+
+	// Number of slots under their minimum, bucketed by shortfall; used for the min-fill part
+	private int[] shortfalls;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model The model of the problem being searched.
+	 */
+	public EvalBound(ProblemModel model)
+	{
+		this.model = model;
+	}
+
+	/**
+	 * Computes the lower bound for a partial Assignments.
+	 *
+	 * @param assigned      The partial Assignments.
+	 * @param domains       The live domains of the unassigned items, or null if they are not being kept.
+	 * @param unassigned    Buffer holding the ids of the unassigned items.
+	 * @param numUnassigned The number of ids in unassigned.
+	 * @return A lower bound on the eval score of any completion of assigned, or Integer.MAX_VALUE if some unassigned
+	 * item has no viable slot left, so there is no completion at all.
+	 */
+	public int compute(Assignments assigned, Domains domains, int[] unassigned, int numUnassigned)
+	{
+		Penalties penalties = Penalties.getInstance();
+		long bound = assigned.getEvalScore();
+
+		// 1. Min-fill penalties that can still be removed
+		int lectures = 0;
+		for (int i = 0; i < numUnassigned; i++)
+		{
+			if (model.isLecture(unassigned[i])) lectures++;
+		}
+		bound -= (long) fillableMinimums(assigned, true, lectures) * penalties.getCourseMin() * penalties.getwMinFilled();
+		bound -= (long) fillableMinimums(assigned, false, numUnassigned - lectures) * penalties.getLabsMin()
+				* penalties.getwMinFilled();
+
+		// 2. The cheapest place for each unassigned item
+		for (int i = 0; i < numUnassigned; i++)
+		{
+			int item = unassigned[i];
+			long[] domain = domainOf(item, assigned, domains, false);
+
+			long cheapest = Long.MAX_VALUE;
+			for (int slot = Bits.nextSetBit(domain, 0); slot != -1; slot = Bits.nextSetBit(domain, slot + 1))
+			{
+				cheapest = Math.min(cheapest, placementCost(assigned, item, slot, penalties));
+			}
+
+			if (cheapest == Long.MAX_VALUE) return Integer.MAX_VALUE;
+			bound += cheapest;
+		}
+
+		// 3. Unassigned pairs that cannot end up together
+		long pairPenalty = (long) penalties.getNotPaired() * penalties.getwPair();
+		if (pairPenalty > 0)
+		{
+			for (int i = 0; i < numUnassigned; i++)
+			{
+				int item = unassigned[i];
+				for (int other : model.itemPairs[item])
+				{
+					if (other < item || assigned.getSlotId(other) != -1) continue;
+
+					long[] domain = domainOf(item, assigned, domains, false);
+					long[] otherDomain = domainOf(other, assigned, domains, true);
+					if (!Bits.intersects(domain, otherDomain)) bound += pairPenalty;
+				}
+			}
+		}
+
+		return (int) Math.min(bound, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Works out how many slots of one type that are under their minimum could still be brought up to it.
+	 *
+	 * @param assigned  The partial Assignments.
+	 * @param isLecture True for lecture slots, false for lab slots.
+	 * @param available The number of unassigned items of that type.
+	 * @return The most slots whose shortfalls add up to no more than available.
+	 */
+	private int fillableMinimums(Assignments assigned, boolean isLecture, int available)
+	{
+		int maxShortfall = 0;
+		for (int slot = model.getFirstSlotId(isLecture); slot < model.getEndSlotId(isLecture); slot++)
+		{
+			maxShortfall = Math.max(maxShortfall, model.slotMin[slot] - assigned.getNumAssigned(slot));
+		}
+		if (maxShortfall <= 0) return 0;
+
+		if (shortfalls == null || shortfalls.length <= maxShortfall) shortfalls = new int[maxShortfall + 1];
+		Arrays.fill(shortfalls, 0);
+		for (int slot = model.getFirstSlotId(isLecture); slot < model.getEndSlotId(isLecture); slot++)
+		{
+			int shortfall = model.slotMin[slot] - assigned.getNumAssigned(slot);
+			if (shortfall > 0) shortfalls[shortfall]++;
+		}
+
+		// Smallest shortfalls first, as that fills the most slots
+		int filled = 0;
+		for (int shortfall = 1; shortfall <= maxShortfall; shortfall++)
+		{
+			int count = Math.min(shortfalls[shortfall], available / shortfall);
+			filled += count;
+			available -= count * shortfall;
+			if (count < shortfalls[shortfall]) break;
+		}
+		return filled;
+	}
+
+	/**
+	 * The part of evalDelta() for placing an item in a slot that can only go up from here: its preference penalty,
+	 * and its section and pair penalties against the items already assigned.
+	 */
+	private long placementCost(Assignments assigned, int item, int slot, Penalties penalties)
+	{
+		long cost = (long) model.getPreferencePenalty(item, slot) * penalties.getwPref();
+
+		for (int other = assigned.getFirstInSlot(slot); other != -1; other = assigned.getNextInSlot(other))
+		{
+			if (model.itemCourse[other] == model.itemCourse[item])
+				cost += (long) penalties.getSection() * penalties.getwSecDiff();
+		}
+
+		for (int paired : model.itemPairs[item])
+		{
+			int pairedSlot = assigned.getSlotId(paired);
+			if (pairedSlot != -1 && pairedSlot != slot) cost += (long) penalties.getNotPaired() * penalties.getwPair();
+		}
+
+		return cost;
+	}
+
+	private long[] domainOf(int item, Assignments assigned, Domains domains, boolean other)
+	{
+		if (domains != null && domains.isTracked(item)) return domains.get(item);
+
+		if (scratch == null)
+		{
+			scratch = Bits.create(model.getNumSlots());
+			scratchOther = Bits.create(model.getNumSlots());
+		}
+		long[] out = other ? scratchOther : scratch;
+		assigned.getViableSlotMask(item, out);
+		return out;
+	}
+}
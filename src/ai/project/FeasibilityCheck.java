@@ -0,0 +1,249 @@
+package ai.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * FeasibilityCheck class
+ *
+ * Cheap necessary conditions for a solution to exist, checked once before any search. Every one of them is a
+ * pigeonhole bound: some group of unassigned items has to fit into the slots open to them (the union of their viable
+ * slots, given the assignments already made), and there is not enough room. The search would find the same thing out,
+ * but only after trying every way of filling those slots, which can take a very long time.
+ *
+ * The bounds checked, for lectures and labs separately:
+ *  1. Capacity: all the items of the type need a place, and there is only so much room left in the slots open to
+ *     them.
+ *  2. Evening capacity: the same, for the evening sections alone, which can only go in evening slots.
+ *  3. 500-level: no two 500-level items may share a slot, so they need as many different slots as there are of them.
+ *  4. Cliques: a group of items that may not share a slot with each other (because they are incompatible, or one of
+ *     them is CPSC 813/913 and another conflicts with it, or both are 500-level) likewise needs a different slot for
+ *     each. Finding the largest such group is hard, so a group is grown greedily around each item instead.
+ * Then, for every item at once:
+ *  5. Matching: every item has to get a slot in its domain without overfilling any slot, which is a b-matching (see
+ *     SlotMatching). This covers the capacity bounds and more, but cannot say as plainly which items are to blame.
+ *
+ * None of these can ever reject a problem that has a solution. Passing them does not mean there is one, though.
+ */
+public class FeasibilityCheck
+{
+	private final Assignments assigned;
+	private final ProblemModel model;
+
+	private String violation;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param assigned The Assignments the search would start from (normally the partial assignments). It is not
+	 *                 modified.
+	 */
+	public FeasibilityCheck(Assignments assigned)
+	{
+		this.assigned = assigned;
+		this.model = assigned.getModel();
+	}
+
+	/**
+	 * Checks every bound, stopping at the first one that is violated.
+	 *
+	 * @param unassigned The items still to assign.
+	 * @return False if some bound is violated, so there is no solution. True otherwise.
+	 */
+	public boolean run(Iterable<SlotItem> unassigned)
+	{
+		int numItems = model.getNumItems();
+		long[][] viable = new long[numItems][];
+		for (SlotItem item : unassigned)
+		{
+			int id = item.getId();
+			if (assigned.getSlotId(id) != -1) continue;
+
+			viable[id] = Bits.create(model.getNumSlots());
+			assigned.getViableSlotMask(id, viable[id]);
+		}
+
+		for (boolean isLecture : new boolean[] {true, false})
+		{
+			String type = isLecture ? "lecture" : "lab";
+
+			ArrayList<Integer> all = new ArrayList<>();
+			ArrayList<Integer> evening = new ArrayList<>();
+			ArrayList<Integer> level500 = new ArrayList<>();
+			for (int item = 0; item < numItems; item++)
+			{
+				if (viable[item] == null || model.isLecture(item) != isLecture) continue;
+
+				all.add(item);
+				if (model.itemEvening[item]) evening.add(item);
+				if (model.item500Level[item]) level500.add(item);
+			}
+
+			if (!checkCapacity(all, viable, type + " capacity", type + "s")) return false;
+			if (!checkCapacity(evening, viable, "evening " + type + " capacity", "evening " + type + "s")) return false;
+			if (!checkDistinct(level500, viable, "500-level " + type + "s")) return false;
+			if (!checkCliques(all, viable, type)) return false;
+		}
+
+		int[] items = new int[numItems];
+		int count = 0;
+		for (int item = 0; item < numItems; item++)
+		{
+			if (viable[item] != null) items[count++] = item;
+		}
+		SlotMatching matching = new SlotMatching(assigned);
+		if (!matching.update(items, count, null))
+		{
+			violation = "slot matching: only " + (count - matching.getNumUnmatched()) + " of the " + count
+					+ " items left can have a slot at the same time without overfilling one.";
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the bound that run() found to be violated.
+	 *
+	 * @return A description of the bound and why it cannot be met, or null if run() succeeded.
+	 */
+	public String getViolation()
+	{
+		return violation;
+	}
+
+	/**
+	 * Checks that the room left in the slots open to a group of items is enough for all of them.
+	 */
+	private boolean checkCapacity(ArrayList<Integer> items, long[][] viable, String bound, String what)
+	{
+		if (items.isEmpty()) return true;
+
+		long[] open = union(items, viable);
+		int room = 0;
+		for (int slot = Bits.nextSetBit(open, 0); slot != -1; slot = Bits.nextSetBit(open, slot + 1))
+		{
+			room += assigned.getSlotMax(slot) - assigned.getNumAssigned(slot);
+		}
+
+		if (items.size() <= room) return true;
+
+		violation = bound + ": " + items.size() + " " + what + " left to place, but the slots open to them only have room for "
+				+ room + ".";
+		return false;
+	}
+
+	/**
+	 * Checks that there are at least as many slots open to a group of items as there are items, for a group that has
+	 * to go in different slots.
+	 */
+	private boolean checkDistinct(ArrayList<Integer> items, long[][] viable, String what)
+	{
+		if (items.isEmpty()) return true;
+
+		int open = Bits.cardinality(union(items, viable));
+		if (items.size() <= open) return true;
+
+		violation = what + ": " + items.size() + " of them must all go in different slots, but only " + open
+				+ ((open == 1) ? " slot is" : " slots are") + " open to them.";
+		return false;
+	}
+
+	/**
+	 * Grows a group of items that may not share a slot around each item in turn, adding the most constrained
+	 * candidates first, and checks each group with checkDistinct().
+	 */
+	private boolean checkCliques(ArrayList<Integer> items, long[][] viable, String type)
+	{
+		// Which items may not share a slot with which
+		int numItems = model.getNumItems();
+		long[][] apart = new long[numItems][];
+		for (int item : items)
+		{
+			apart[item] = Bits.create(numItems);
+		}
+		for (int item : items)
+		{
+			for (int other : model.itemIncompatible[item]) setApart(apart, item, other);
+			for (int other : model.itemSpecialConflicts[item]) setApart(apart, item, other);
+			if (model.item500Level[item])
+			{
+				for (int other : items)
+				{
+					if (other != item && model.item500Level[other]) setApart(apart, item, other);
+				}
+			}
+		}
+
+		long[] clique = Bits.create(numItems);
+		for (int item : items)
+		{
+			if (Bits.cardinality(apart[item]) == 0) continue;
+
+			ArrayList<Integer> members = new ArrayList<>();
+			members.add(item);
+			Arrays.fill(clique, 0);
+			Bits.set(clique, item);
+
+			// Candidates with the most neighbours first, as they are the likeliest to be in a large group
+			ArrayList<Integer> candidates = new ArrayList<>();
+			for (int other = Bits.nextSetBit(apart[item], 0); other != -1; other = Bits.nextSetBit(apart[item], other + 1))
+			{
+				candidates.add(other);
+			}
+			candidates.sort((a, b) -> Integer.compare(Bits.cardinality(apart[b]), Bits.cardinality(apart[a])));
+
+			for (int other : candidates)
+			{
+				if (isSubset(clique, apart[other]))
+				{
+					members.add(other);
+					Bits.set(clique, other);
+				}
+			}
+
+			if (members.size() > 1 && !checkDistinct(members, viable, "mutually exclusive " + type + "s " + names(members)))
+				return false;
+		}
+
+		return true;
+	}
+
+	private void setApart(long[][] apart, int item, int other)
+	{
+		if (apart[other] == null) return;
+
+		Bits.set(apart[item], other);
+		Bits.set(apart[other], item);
+	}
+
+	private static boolean isSubset(long[] bits, long[] of)
+	{
+		for (int w = 0; w < bits.length; w++)
+		{
+			if ((bits[w] & ~of[w]) != 0) return false;
+		}
+		return true;
+	}
+
+	private long[] union(ArrayList<Integer> items, long[][] viable)
+	{
+		long[] rv = Bits.create(model.getNumSlots());
+		for (int item : items)
+		{
+			Bits.or(rv, viable[item]);
+		}
+		return rv;
+	}
+
+	private String names(ArrayList<Integer> items)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int item : items)
+		{
+			if (sb.length() > 0) sb.append(", ");
+			sb.append(model.getItem(item));
+		}
+		return "(" + sb + ")";
+	}
+}
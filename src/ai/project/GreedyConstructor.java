@@ -0,0 +1,362 @@
+package ai.project;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * GreedyConstructor class
+ *
+ * Builds complete schedules quickly, without searching, to start the SetSearch from. Placing items so that no two that
+ * conflict share (or overlap) a slot, and no slot is overfilled, is a graph colouring problem with capacities, and
+ * this is DSatur for it: the next item placed is always the most saturated one, the item with the most of its slots
+ * already blocked by what has been placed, and it goes in its cheapest viable slot (the one that adds the least to
+ * the eval score). Ties go to the item with fewer slots left, then the one with the higher degree (see ProblemModel),
+ * then at random.
+ *
+ * As in DSatur, the saturation of each item is kept rather than worked out afresh for every pick: placing an item only
+ * changes the viable slots of the items it conflicts with, the others in its symmetry class, and, if the slot it went
+ * in is now full (or now has a 500-level item), the items (or 500-level items) that could have gone in that slot. Only
+ * those are recounted.
+ *
+ * Greedy placement can leave an item with nowhere to go. Those items are then handed to a short TrailSearch, with a
+ * small failure budget, to fit in around what was placed. If that fails, the placed items that conflict with them, or
+ * take up the room in the slots they could go in, are taken back off and searched again along with them. Only if that
+ * fails as well is the schedule given up on.
+ *
+ * To build a population of different schedules, every schedule but the first picks at random among the slots whose
+ * cost is near the cheapest, rather than always the cheapest (a restricted candidate list, as in GRASP).
+ */
+public class GreedyConstructor
+{
+	// How far above the cheapest a slot may cost and still be picked, as a fraction of the range of costs, for every
+	// schedule after the first
+	private static final double CANDIDATE_RANGE = 0.3;
+
+	private final Department department;
+	private final ProblemModel model;
+	private final Assignments start;
+	private final Random rand;
+	private final int repairFailures;
+
+	// The ids of the items to place, and buffers for the viable slots of an item
+	private final int[] items;
+	private final int numItems;
+	private final long[] mask;
+	private final int[] slots;
+	private final int[] costs;
+
+	// The size of each item's static domain, and the items (of those to place) whose static domain holds each slot
+	private final int[] domainSize;
+	private final int[][] slotItems;
+
+	// Per schedule: which items are still to place, and their saturation and number of viable slots left. mark is
+	// stamped as an item is recounted, so that no item is recounted twice for one placement.
+	private final boolean[] waiting;
+	private final int[] saturation;
+	private final int[] size;
+	private final int[] mark;
+	private int stamp;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param department     The Department being scheduled.
+	 * @param start          The Assignments to start from (normally the partial assignments). It is not modified.
+	 * @param unassigned     The items still to assign.
+	 * @param rand           Random source for tie-breaking and picking among candidate slots.
+	 * @param repairFailures The failure budget of each repair search.
+	 */
+	public GreedyConstructor(Department department, Assignments start, Collection<SlotItem> unassigned, Random rand,
+			int repairFailures)
+	{
+		this.department = department;
+		this.model = start.getModel();
+		this.start = start;
+		this.rand = rand;
+		this.repairFailures = repairFailures;
+
+		int count = 0;
+		items = new int[unassigned.size()];
+		for (SlotItem item : unassigned)
+		{
+			if (start.getSlotId(item.getId()) == -1) items[count++] = item.getId();
+		}
+		numItems = count;
+
+		mask = Bits.create(model.getNumSlots());
+		slots = new int[model.getNumSlots()];
+		costs = new int[model.getNumSlots()];
+
+		domainSize = new int[model.getNumItems()];
+		int[] perSlot = new int[model.getNumSlots()];
+		for (int i = 0; i < numItems; i++)
+		{
+			long[] domain = model.itemDomain[items[i]];
+			domainSize[items[i]] = Bits.cardinality(domain);
+			for (int slot = Bits.nextSetBit(domain, 0); slot != -1; slot = Bits.nextSetBit(domain, slot + 1))
+			{
+				perSlot[slot]++;
+			}
+		}
+		slotItems = new int[model.getNumSlots()][];
+		for (int slot = 0; slot < slotItems.length; slot++)
+		{
+			slotItems[slot] = new int[perSlot[slot]];
+			perSlot[slot] = 0;
+		}
+		for (int i = 0; i < numItems; i++)
+		{
+			long[] domain = model.itemDomain[items[i]];
+			for (int slot = Bits.nextSetBit(domain, 0); slot != -1; slot = Bits.nextSetBit(domain, slot + 1))
+			{
+				slotItems[slot][perSlot[slot]++] = items[i];
+			}
+		}
+
+		waiting = new boolean[model.getNumItems()];
+		saturation = new int[model.getNumItems()];
+		size = new int[model.getNumItems()];
+		mark = new int[model.getNumItems()];
+	}
+
+	/**
+	 * Builds a population of schedules.
+	 *
+	 * @param size The number of schedules to try to build.
+	 * @return The schedules that could be completed, lowest eval score first. There may be fewer than size of them,
+	 * or none, which does not mean there is no solution.
+	 */
+	public ArrayList<Assignments> build(int size)
+	{
+		ArrayList<Assignments> rv = new ArrayList<>();
+		for (int i = 0; i < size; i++)
+		{
+			if (Thread.currentThread().isInterrupted()) break;
+
+			Assignments schedule = construct((i == 0) ? 0 : CANDIDATE_RANGE);
+			if (schedule != null) rv.add(schedule);
+		}
+
+		rv.sort((a, b) -> Integer.compare(a.getEvalScore(), b.getEvalScore()));
+		return rv;
+	}
+
+	/**
+	 * Builds one schedule: places every item greedily, then repairs the ones that could not be placed.
+	 *
+	 * @param range How far above the cheapest a slot may cost and still be picked, as a fraction of the range of
+	 *              costs; 0 always picks the cheapest.
+	 * @return The schedule, or null if it could not be completed.
+	 */
+	private Assignments construct(double range)
+	{
+		Assignments assigned = new Assignments(start);
+
+		int[] left = items.clone();
+		int numLeft = numItems;
+		ArrayList<SlotItem> stuck = new ArrayList<>();
+
+		stamp++;
+		for (int i = 0; i < numItems; i++)
+		{
+			waiting[items[i]] = true;
+			recount(assigned, items[i]);
+		}
+
+		while (numLeft > 0)
+		{
+			int pick = mostSaturated(left, numLeft);
+			int item = left[pick];
+			left[pick] = left[--numLeft];
+			waiting[item] = false;
+
+			int slot = cheapestSlot(assigned, item, range);
+			if (slot == -1)
+			{
+				stuck.add(model.getItem(item));
+				continue;
+			}
+
+			boolean first500 = model.item500Level[item] && !has500Level(assigned, slot);
+			assigned.addAssignment(slot, item);
+			placed(assigned, item, slot, first500);
+		}
+
+		return stuck.isEmpty() ? assigned : repair(assigned, stuck);
+	}
+
+	/**
+	 * Picks the unassigned item with the most of its statically allowed slots blocked.
+	 *
+	 * @return The index into left of the chosen item.
+	 */
+	private int mostSaturated(int[] left, int numLeft)
+	{
+		int best = -1;
+		int ties = 0;
+
+		for (int i = 0; i < numLeft; i++)
+		{
+			int item = left[i];
+
+			int cmp = (best == -1) ? 1 : Integer.compare(saturation[item], saturation[left[best]]);
+			if (cmp == 0) cmp = Integer.compare(size[left[best]], size[item]);
+			if (cmp == 0) cmp = Integer.compare(model.itemDegree[item], model.itemDegree[left[best]]);
+
+			if (cmp > 0)
+			{
+				best = i;
+				ties = 1;
+			}
+			else if (cmp == 0 && rand.nextInt(++ties) == 0)
+			{
+				best = i;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Recounts the saturation of every item still to place whose viable slots may have changed with an assignment.
+	 *
+	 * @param item     The id of the item just placed.
+	 * @param slot     The id of the slot it went in.
+	 * @param first500 True if it is the first 500-level item in the slot.
+	 */
+	private void placed(Assignments assigned, int item, int slot, boolean first500)
+	{
+		stamp++;
+		recount(assigned, model.itemIncompatible[item]);
+		recount(assigned, model.itemLectureLabConflicts[item]);
+		recount(assigned, model.itemSpecialConflicts[item]);
+		if (model.itemSymmetryClass[item] != null) recount(assigned, model.itemSymmetryClass[item]);
+
+		boolean full = assigned.getNumAssigned(slot) >= assigned.getSlotMax(slot);
+		if (full || first500)
+		{
+			for (int other : slotItems[slot])
+			{
+				if (full || model.item500Level[other]) recount(assigned, other);
+			}
+		}
+	}
+
+	private void recount(Assignments assigned, int[] others)
+	{
+		for (int other : others)
+		{
+			recount(assigned, other);
+		}
+	}
+
+	private void recount(Assignments assigned, int item)
+	{
+		if (!waiting[item] || mark[item] == stamp) return;
+		mark[item] = stamp;
+
+		assigned.getViableSlotMask(item, mask);
+		size[item] = Bits.cardinality(mask);
+		saturation[item] = domainSize[item] - size[item];
+	}
+
+	private boolean has500Level(Assignments assigned, int slot)
+	{
+		for (int other = assigned.getFirstInSlot(slot); other != -1; other = assigned.getNextInSlot(other))
+		{
+			if (model.item500Level[other]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Picks a viable slot for an item, among those whose cost is within range of the cheapest.
+	 *
+	 * @return The slot id, or -1 if the item has no viable slot left.
+	 */
+	private int cheapestSlot(Assignments assigned, int item, double range)
+	{
+		int count = assigned.getViableSlotIds(item, slots);
+		if (count == 0) return -1;
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++)
+		{
+			costs[i] = assigned.evalDelta(slots[i], item);
+			min = Math.min(min, costs[i]);
+			max = Math.max(max, costs[i]);
+		}
+
+		long limit = min + (long) (range * ((long) max - min));
+		int chosen = -1;
+		int candidates = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (costs[i] <= limit && rand.nextInt(++candidates) == 0) chosen = slots[i];
+		}
+		return chosen;
+	}
+
+	/**
+	 * Fits the items that could not be placed in with a short search. If they do not fit around the items already
+	 * placed, the placed items in their way are taken back off and searched again too.
+	 *
+	 * @param assigned The greedy schedule, with the stuck items missing.
+	 * @param stuck    The items that could not be placed.
+	 * @return The completed schedule, or null if neither search could complete it.
+	 */
+	private Assignments repair(Assignments assigned, ArrayList<SlotItem> stuck)
+	{
+		// A search that fails leaves the Assignments the way it found them, so the greedy schedule is still there to
+		// rebuild from below
+		if (search(assigned, stuck)) return assigned;
+
+		boolean[] freed = new boolean[model.getNumItems()];
+		for (SlotItem item : stuck)
+		{
+			int id = item.getId();
+			free(freed, assigned, model.itemIncompatible[id]);
+			free(freed, assigned, model.itemLectureLabConflicts[id]);
+			free(freed, assigned, model.itemSpecialConflicts[id]);
+			if (model.itemSymmetryClass[id] != null) free(freed, assigned, model.itemSymmetryClass[id]);
+
+			// ...and whatever is taking up the room in the slots it could have gone in
+			long[] domain = model.itemDomain[id];
+			for (int slot = Bits.nextSetBit(domain, 0); slot != -1; slot = Bits.nextSetBit(domain, slot + 1))
+			{
+				for (int other = assigned.getFirstInSlot(slot); other != -1; other = assigned.getNextInSlot(other))
+				{
+					if (start.getSlotId(other) == -1) freed[other] = true;
+				}
+			}
+		}
+
+		Assignments rebuilt = new Assignments(start);
+		ArrayList<SlotItem> unplaced = new ArrayList<>(stuck);
+		for (int i = 0; i < numItems; i++)
+		{
+			int item = items[i];
+			if (freed[item]) unplaced.add(model.getItem(item));
+			else if (assigned.getSlotId(item) != -1) rebuilt.addAssignment(assigned.getSlotId(item), item);
+		}
+
+		return search(rebuilt, unplaced) ? rebuilt : null;
+	}
+
+	private void free(boolean[] freed, Assignments assigned, int[] others)
+	{
+		for (int other : others)
+		{
+			if (start.getSlotId(other) == -1 && assigned.getSlotId(other) != -1) freed[other] = true;
+		}
+	}
+
+	private boolean search(Assignments assigned, ArrayList<SlotItem> unplaced)
+	{
+		TrailSearch search = new TrailSearch(department, assigned, unplaced, rand);
+		search.setFailureLimit(repairFailures);
+		return search.search();
+	}
+}
@@ -94,7 +94,7 @@ public class Main
     }
 
     /**
-     * Parses a configuration file (properties file) for the Penalties values.
+     * Parses a configuration file (properties file) for the Penalties values, and any SearchOptions.
      *
      * @param configFile The configuration file containing Penalties.
      * @throws IOException Thrown if the file cannot be opened.
@@ -121,6 +121,9 @@ public class Main
             penalties.setwPref(Integer.parseInt(prop.getProperty("wPref")));
             penalties.setwPair(Integer.parseInt(prop.getProperty("wPair")));
             penalties.setwSecDiff(Integer.parseInt(prop.getProperty("wSecDiff")));
+
+            // Search options are optional; any not given keep their defaults
+            SearchOptions.getInstance().load(prop);
         }
         finally {
             if (input != null) {
@@ -155,6 +158,91 @@ public class Main
 		if (partial != null)
 			unassigned.removeAll(partial.getAllCourses());
 
+		// Anything with no statically allowed slot can never be assigned, so there is no point searching
+		ArrayList<SlotItem> noDomain = department.getModel().getItemsWithEmptyDomain();
+		noDomain.retainAll(unassigned);
+		if (!noDomain.isEmpty())
+		{
+			for (SlotItem item : noDomain)
+				System.out.println("Infeasible: " + item + " has no slot that meets its hard constraints.");
+			System.out.println("No solution found\n");
+			return;
+		}
+
+		// Some groups of items plainly cannot all fit in the slots open to them
+		if (SearchOptions.getInstance().isFeasibilityCheck())
+		{
+			FeasibilityCheck check = new FeasibilityCheck((partial != null) ? partial : new Assignments(department.getModel()));
+			if (!check.run(unassigned))
+			{
+				System.out.println("Infeasible: " + check.getViolation());
+				System.out.println("No solution found\n");
+				return;
+			}
+		}
+
+		// Anything with only one slot left has to go there, so fix those before searching
+		if (SearchOptions.getInstance().isPreprocess())
+		{
+			Assignments root = (partial != null) ? partial : new Assignments(department.getModel());
+			Preprocessor preprocessor = new Preprocessor(root);
+			if (!preprocessor.run(unassigned))
+			{
+				System.out.println("Infeasible: " + preprocessor.getWipedOut() + " has no slot left once the forced assignments are made.");
+				System.out.println("No solution found\n");
+				return;
+			}
+
+			for (SlotItem item : preprocessor.getFixed())
+				department.addForcedAssignment(item, root.getTimeSlot(item));
+			System.out.println("Preprocessing fixed " + preprocessor.getFixed().size() + " forced assignment(s); "
+					+ unassigned.size() + " item(s) left to search.");
+		}
+
+		if (SearchOptions.getInstance().isBranchAndBound() || SearchOptions.getInstance().isDiscrepancySearch())
+		{
+			ComputeOptimal(fileName, department, unassigned);
+			return;
+		}
+
+		SearchOptions options = SearchOptions.getInstance();
+		Assignments start = department.getPartialAssignments();
+		if (start == null)
+			start = new Assignments(department.getModel());
+
+		// The BeamSearch finds both starting schedules at once, if it can
+		if (options.isBeamSearch())
+		{
+			BeamSearch beam = new BeamSearch(start, unassigned, options.getBeamStrategy(), options.getBeamWidth(),
+					options.getBeamMaxStates());
+			F.addAll(beam.search(2));
+			if (F.isEmpty() && beam.isComplete())
+			{
+				System.out.println("No solution found\n");
+				return;
+			}
+
+			// A best-first search that proves its first schedule optimal leaves nothing for the SetSearch to improve
+			if (!F.isEmpty() && beam.isProvenOptimal(F.get(0)))
+			{
+				Assignments optimal = F.get(0);
+				System.out.println("Search complete; this schedule is optimal.");
+				System.out.println();
+				System.out.println("Eval-value: " + optimal.getEvalScore() + "\n" + optimal.toString() + "\n\n");
+
+				optimal.WriteToFile(fileName);
+				return;
+			}
+		}
+
+		// The GreedyConstructor builds a whole population of starting schedules in much less time than an Or-Tree run
+		if (options.isGreedyConstruct())
+		{
+			GreedyConstructor greedy = new GreedyConstructor(department, start, unassigned, options.newRandom(),
+					options.getGreedyRepairFailures());
+			F.addAll(greedy.build(options.getGreedyPopulation()));
+		}
+
 		OTree orTree;
 
         while (F.size() < 2)
@@ -179,8 +267,9 @@ public class Main
 
 		for (int i = 0; i < 20; i++)
 		{
-			Assignments parentA = F.get(0);
-			Assignments parentB = F.get(1);
+			// Work through the starting schedules in pairs, if there are more than two
+			Assignments parentA = F.get((2 * i) % F.size());
+			Assignments parentB = F.get((2 * i + 1) % F.size());
 
 			if (best != null)
 			{
@@ -220,6 +309,46 @@ public class Main
 		bestSchedule.WriteToFile(fileName);
 	}
 
+    /**
+     * Runs the branch-and-bound search (see TrailSearch.optimize()), or its limited discrepancy version (see
+     * TrailSearch.optimizeByDiscrepancy()), in place of the Or-Tree and SetSearch, and reports how far the schedule it
+     * found could be from optimal.
+     *
+     * @param fileName   The input file name.
+     * @param department The parsed Department.
+     * @param unassigned The items that are not partially assigned.
+     */
+	private static void ComputeOptimal(String fileName, Department department, ArrayList<SlotItem> unassigned)
+	{
+		Assignments schedule = department.getPartialAssignments();
+		if (schedule == null)
+			schedule = new Assignments(department.getModel());
+
+		SearchOptions options = SearchOptions.getInstance();
+		TrailSearch search = new TrailSearch(department, schedule, unassigned, options.newRandom());
+
+		long timeLimit = options.getBranchAndBoundSeconds() * 1000L;
+		boolean found = options.isDiscrepancySearch() ? search.optimizeByDiscrepancy(timeLimit) : search.optimize(timeLimit);
+		if (!found)
+		{
+			System.out.println(search.isProvenOptimal() ? "No solution found\n" : "No solution found in time\n");
+			return;
+		}
+
+		int best = search.getBestScore();
+		int lowerBound = search.getLowerBound();
+		if (search.isProvenOptimal())
+			System.out.println("Search complete; this schedule is optimal.");
+		else
+			System.out.println("Search stopped. Lower bound: " + lowerBound + ", optimality gap: " + (best - lowerBound)
+					+ ((best > 0) ? String.format(" (%.1f%%)", 100.0 * (best - lowerBound) / best) : ""));
+
+        System.out.println();
+		System.out.println("Eval-value: " + schedule.getEvalScore() + "\n" + schedule.toString() + "\n\n");
+
+		schedule.WriteToFile(fileName);
+	}
+
     /**
      * Parses the input file and translates the contents into a Department object.
      *
@@ -468,6 +597,10 @@ public class Main
 			}
 
 			bufferedReader.close();
+
+			// Freeze the parsed department into its id-indexed form
+			if (department != null)
+				department.compile();
 		}
 		catch (FileNotFoundException ex)
 		{
@@ -0,0 +1,138 @@
+package ai.project;
+
+import java.util.Arrays;
+
+/**
+ * NogoodStore class
+ *
+ * A bounded store of nogoods learned by the search. A nogood is a set of (item, slot) assignments that is known not to
+ * be part of any solution: once all of them have been made, the search can back out straight away instead of
+ * exploring everything below them again.
+ *
+ * Each (item, slot) pair is encoded as one int, item * numSlots + slot. Every nogood is indexed under each of its
+ * pairs, so after an assignment only the nogoods that mention it have to be checked.
+ *
+ * The store holds at most a fixed number of nogoods. When it is full, the oldest is overwritten. Its index entries are
+ * not removed at that point; each entry records which generation of the nogood it was made for, and stale entries are
+ * dropped the next time they are looked at.
+ */
+public class NogoodStore
+{
+	private final int numSlots;
+	private final int maxLength;
+
+	// The nogoods, used as a ring buffer, and how many times each entry has been written
+	private final int[][] nogoods;
+	private final int[] generation;
+	private int next;
+
+	// For each (item, slot) pair, the nogoods that mention it, as (generation << 32 | id)
+	private final long[][] index;
+	private final int[] indexSize;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model     The model of the problem being searched.
+	 * @param capacity  The most nogoods to keep at once.
+	 * @param maxLength The most assignments a nogood may have to be kept. Long nogoods are rarely matched again, so
+	 *                  they are not worth the space or the time spent checking them.
+	 */
+	public NogoodStore(ProblemModel model, int capacity, int maxLength)
+	{
+		this.numSlots = model.getNumSlots();
+		this.maxLength = maxLength;
+
+		nogoods = new int[capacity][];
+		generation = new int[capacity];
+		index = new long[model.getNumItems() * numSlots][];
+		indexSize = new int[index.length];
+	}
+
+	/**
+	 * Adds a nogood, if it is not too long.
+	 *
+	 * @param items The ids of the items in the nogood.
+	 * @param slots The slot each item is assigned to, parallel to items.
+	 * @param count The number of assignments in the nogood.
+	 */
+	public void add(int[] items, int[] slots, int count)
+	{
+		if (count == 0 || count > maxLength || nogoods.length == 0) return;
+
+		int[] nogood = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			nogood[i] = items[i] * numSlots + slots[i];
+		}
+
+		int id = next;
+		next = (next + 1) % nogoods.length;
+		nogoods[id] = nogood;
+		long entry = ((long) ++generation[id] << 32) | id;
+
+		for (int pair : nogood)
+		{
+			if (index[pair] == null) index[pair] = new long[4];
+			else if (indexSize[pair] == index[pair].length) index[pair] = Arrays.copyOf(index[pair], indexSize[pair] * 2);
+			index[pair][indexSize[pair]++] = entry;
+		}
+	}
+
+	/**
+	 * Checks whether an assignment that has just been made completes any nogood.
+	 *
+	 * @param item     The id of the item just assigned.
+	 * @param slot     The id of the slot it was assigned to.
+	 * @param assigned The current Assignments, including that assignment.
+	 * @return The id of a nogood whose assignments have now all been made, or -1 if there is none.
+	 */
+	public int check(int item, int slot, Assignments assigned)
+	{
+		int pair = item * numSlots + slot;
+		long[] entries = index[pair];
+
+		for (int i = 0; i < indexSize[pair]; )
+		{
+			int id = (int) entries[i];
+
+			if (generation[id] != (int) (entries[i] >>> 32))
+			{
+				// Overwritten since it was indexed here
+				entries[i] = entries[--indexSize[pair]];
+				continue;
+			}
+
+			if (holds(nogoods[id], assigned)) return id;
+			i++;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Gets the items in a nogood.
+	 *
+	 * @param id  The id of the nogood, as returned by check().
+	 * @param out Buffer to fill with the item ids.
+	 * @return The number of items written.
+	 */
+	public int getItems(int id, int[] out)
+	{
+		int[] nogood = nogoods[id];
+		for (int i = 0; i < nogood.length; i++)
+		{
+			out[i] = nogood[i] / numSlots;
+		}
+		return nogood.length;
+	}
+
+	private boolean holds(int[] nogood, Assignments assigned)
+	{
+		for (int pair : nogood)
+		{
+			if (assigned.getSlotId(pair / numSlots) != pair % numSlots) return false;
+		}
+		return true;
+	}
+}
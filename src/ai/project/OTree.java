@@ -1,207 +1,401 @@
-package ai.project;
-
-import java.util.*;
-import java.util.concurrent.*;
-
-
-/**
- * OTree class
- *
- * This class represents an Or-Tree for the Or-Tree based search.
- * It is used to generate solutions, either from partial solutions or de novo.
- *
- * OTree is a recursive tree in that every node of the OTree is, itself, an Or Tree as well.
- */
-public class OTree
-{
-
-	// Solution Enum
-	public enum eSolution
-	{
-		NO,
-		YES,
-		UNKNOWN
-	}
-
-	/*
-	 * Private Variables
-	 */
-	private ArrayList<SlotItem> m_pUnassignedList;
-
-	private Department m_pDept;
-	private Assignments m_pAssigned;
-	private TimeTable m_pTbl;
-	private ArrayList<OTree> m_pLeafs;
-	private eSolution m_eSol;
-	private boolean m_bInitialized;
-	private Random m_pRand;
-	static int bestTry = Integer.MAX_VALUE;
-
-	/********************************************************************************\
-	 * Getters/Setters																*
-	 \********************************************************************************/
-	public Assignments getAssignments()
-	{
-		return m_pAssigned;
-	}
-
-	/**
-	 * Constructor - Initializes the Or-Tree with a partial or fresh solution. Will only use partial solution if both AssignedList and UnassignedList are provided.
-	 * Otherwise, Or-Tree will initialize with a fresh solution. TODO: If given a partial assignment, could possibly populate an Unassigned list from that.
-	 *
-	 * @param pDept           A Department is required for generating the Unassigned list and TimeTable.
-	 * @param pAssignedList   If null, then Or-Tree will run with a Fresh solution. Otherwise, will run with the given partial solution.
-	 * @param pUnassignedList If null, then Or-Tree will run with a Fresh solution. Otherwise, will run with the given partial solution.
-	 */
-	public OTree(Department pDept, Assignments pAssignedList, Collection<SlotItem> pUnassignedList)
-	{
-		// Initialize local timetable		
-		if ((m_bInitialized = (null != pDept)))
-		{
-			m_pDept = pDept;
-			m_pTbl = pDept.getTimeTable();
-			m_pLeafs = new ArrayList<>();
-			m_pRand = new Random(System.currentTimeMillis());
-
-			if (pAssignedList == null)
-			{
-				m_pAssigned = new Assignments(m_pTbl);        // Fresh Assignments
-			}
-			else
-			{
-				m_pAssigned = new Assignments(pAssignedList);
-			}
-
-			// Default: start from s0
-			if (null == pUnassignedList)
-			{
-				m_pUnassignedList = new ArrayList<>(pDept.getAllCourses());        // Fresh List of all Courses and Labs
-				m_eSol = eSolution.UNKNOWN;
-			}
-			else    // Start from given partial solution.
-			{
-				m_pUnassignedList = new ArrayList<>(pUnassignedList);
-				m_eSol = checkGoal();
-			}
-		}
-	}
-
-	/**
-	 * Copy Constructor.
-	 *
-	 * @param pInitialNode Other Node to copy from.
-	 */
-	public OTree(OTree pInitialNode)
-	{
-		m_pDept = pInitialNode.m_pDept;
-		m_pTbl = pInitialNode.m_pTbl;
-		m_pLeafs = new ArrayList<>();
-		m_pLeafs.addAll(pInitialNode.m_pLeafs);
-		m_pRand = pInitialNode.m_pRand;
-		m_pAssigned = new Assignments(pInitialNode.m_pAssigned);
-		m_pUnassignedList = new ArrayList<>(pInitialNode.m_pUnassignedList);
-		m_eSol = pInitialNode.m_eSol;
-		m_bInitialized = true;
-	}
-
-	/**
-	 * Executes the Or-Tree functionality on its current assignment. Evaluates Depthfirst running altern to generate leafs.
-	 * leafs are only generated if something can be successfully assigned to a timeslot. If nothing can be assigned, then leaf evaluates to no and returns.
-	 * This function recursively checks all altern assignments, if they all evaluate to no then no solution can be found.
-	 *
-	 * @return Either a Generated Solution that may or may not be valid (check isValid()) or null if OTree wasn't initialized properly.
-	 */
-	public OTree genSolution()
-	{
-		// Local Variables
-		OTree pReturnTree = null;
-
-		if (m_bInitialized && !Thread.currentThread().isInterrupted())
-		{
-			if (m_eSol == eSolution.YES)
-				return this; // Found a valid solution or we didn't
-
-			// Generate Leaves
-			this.altern();
-
-			if (m_pLeafs.isEmpty())
-			{
-				m_eSol = eSolution.NO;
-
-				if (m_pUnassignedList.size() < bestTry)
-				{
-					bestTry = m_pUnassignedList.size();
-					System.out.println("New best found: " + bestTry);
-					this.getAssignments().WriteToFile(m_pDept.departmentName + ".txt");
-				}
-				return this;
-			}
-
-			do    // Evaluate Leaves
-			{
-				// Grab Next Evaluation
-				pReturnTree = m_pLeafs.remove(0);
-
-				// Recurse
-				pReturnTree = pReturnTree.genSolution();
-			}
-			while (pReturnTree != null && (eSolution.YES != pReturnTree.m_eSol) && !m_pLeafs.isEmpty());
-
-			if (null != pReturnTree && eSolution.YES != pReturnTree.m_eSol)
-			{
-				m_eSol = eSolution.NO;
-			}
-		}
-
-		return pReturnTree;
-	}
-
-	private void altern()
-	{
-		// Local Variables
-		m_pLeafs.clear(); // Clear Leafs at this level to force Depth-first search
-
-		// Check that Unassigned List is not empty, should have evaluated as valid solution before reaching here.
-		if (m_pUnassignedList.size() > 0)
-		{
-			// Pull Item and get list of possible assignments
-			SlotItem unassignedItem = m_pUnassignedList.remove(m_pRand.nextInt(m_pUnassignedList.size()));
-			ArrayList<Evaluated> validSlots = m_pAssigned.getViableTimeSlots(m_pTbl, unassignedItem);
-
-			// Generate Leafs based on evaluated assignments
-			for(Evaluated slot : validSlots)
-			{
-				// New Prob with the Evaluated Assignment
-				Assignments pNxtAssign = new Assignments(m_pAssigned);
-				pNxtAssign.addAssignment(slot.getTimeSlot(), unassignedItem);
-
-				// Generate Leaf base on that Prob
-				m_pLeafs.add( new OTree(m_pDept, pNxtAssign, m_pUnassignedList));
-			}
-		}
-	}
-
-	/**
-	 * Checks goal based on definition of Or-Tree Gv(s):
-	 * Yes iff:
-	 * 1) s = (pr', yes) => This Or-Tree has everything assigned.
-	 * 2) s = (pr', ?, b1, ..., bn), ƎiGv(bi) = yes
-	 * 3) All leafs of s have either sol-entry no or cannot be processed using Altern
-	 *
-	 * @return Result of this Or-Tree
-	 */
-	private eSolution checkGoal()
-	{
-		return (m_pUnassignedList.isEmpty()) ? eSolution.YES : (m_pLeafs.isEmpty()) ? eSolution.NO : eSolution.UNKNOWN;
-	}
-
-	/**
-	 * Check to determine if result is a valid solution.
-	 *
-	 * @return True if the Assignment generated is a valid solution; False otherwise.
-	 */
-	public boolean isValid()
-	{
-		return m_bInitialized && (m_eSol == eSolution.YES);
-	}
-}
+package ai.project;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * OTree class
+ *
+ * This class represents an Or-Tree for the Or-Tree based search.
+ * It is used to generate solutions, either from partial solutions or de novo.
+ *
+ * OTree is a recursive tree in that every node of the OTree is, itself, an Or Tree as well. The search over it is not
+ * recursive, though; see genSolution().
+ *
+ * Children are not built up front. altern() picks the item to branch on and orders its viable slots, and each child
+ * is only created (copying the Assignments) when the search gets to it, so a node whose first child succeeds never
+ * pays for the rest.
+ *
+ * If SearchOptions.isInPlace() is set, genSolution() instead hands the whole search to a TrailSearch, which explores
+ * the same tree on this node's Assignments in place, using the undo trail rather than copying for every child.
+ */
+public class OTree
+{
+
+	// Solution Enum
+	public enum eSolution
+	{
+		NO,
+		YES,
+		UNKNOWN
+	}
+
+	/*
+	 * Private Variables
+	 */
+	private ArrayList<SlotItem> m_pUnassignedList;
+
+	private Department m_pDept;
+	private Assignments m_pAssigned;
+	private TimeTable m_pTbl;
+	private LeafIterator m_pLeafs;
+	private eSolution m_eSol;
+	private boolean m_bInitialized;
+	private Random m_pRand;
+	private VariableOrdering m_pVarOrder;
+	private ValueOrdering m_pValOrder;
+	private int[] m_pSlotBuf;
+	static int bestTry = Integer.MAX_VALUE;
+
+	/********************************************************************************\
+	 * Getters/Setters																*
+	 \********************************************************************************/
+	public Assignments getAssignments()
+	{
+		return m_pAssigned;
+	}
+
+	/**
+	 * Constructor - Initializes the Or-Tree with a partial or fresh solution. Will only use partial solution if both AssignedList and UnassignedList are provided.
+	 * Otherwise, Or-Tree will initialize with a fresh solution. TODO: If given a partial assignment, could possibly populate an Unassigned list from that.
+	 *
+	 * @param pDept           A Department is required for generating the Unassigned list and TimeTable.
+	 * @param pAssignedList   If null, then Or-Tree will run with a Fresh solution. Otherwise, will run with the given partial solution.
+	 * @param pUnassignedList If null, then Or-Tree will run with a Fresh solution. Otherwise, will run with the given partial solution.
+	 */
+	public OTree(Department pDept, Assignments pAssignedList, Collection<SlotItem> pUnassignedList)
+	{
+		// Initialize local timetable		
+		if ((m_bInitialized = (null != pDept)))
+		{
+			m_pDept = pDept;
+			m_pTbl = pDept.getTimeTable();
+			m_pLeafs = new LeafIterator();
+			m_pRand = SearchOptions.getInstance().newRandom();
+
+			if (pAssignedList == null)
+			{
+				m_pAssigned = new Assignments(pDept.getModel());        // Fresh Assignments
+			}
+			else
+			{
+				m_pAssigned = new Assignments(pAssignedList);
+			}
+
+			// Default: start from s0
+			if (null == pUnassignedList)
+			{
+				m_pUnassignedList = new ArrayList<>(pDept.getAllCourses());        // Fresh List of all Courses and Labs
+				m_eSol = eSolution.UNKNOWN;
+			}
+			else    // Start from given partial solution.
+			{
+				m_pUnassignedList = new ArrayList<>(pUnassignedList);
+				m_eSol = checkGoal();
+			}
+		}
+	}
+
+	/**
+	 * Copy Constructor.
+	 *
+	 * @param pInitialNode Other Node to copy from.
+	 */
+	public OTree(OTree pInitialNode)
+	{
+		m_pDept = pInitialNode.m_pDept;
+		m_pTbl = pInitialNode.m_pTbl;
+		m_pLeafs = new LeafIterator(pInitialNode.m_pLeafs);
+		m_pRand = pInitialNode.m_pRand;
+		m_pVarOrder = pInitialNode.m_pVarOrder;
+		m_pValOrder = pInitialNode.m_pValOrder;
+		m_pSlotBuf = pInitialNode.m_pSlotBuf;
+		m_pAssigned = new Assignments(pInitialNode.m_pAssigned);
+		m_pUnassignedList = new ArrayList<>(pInitialNode.m_pUnassignedList);
+		m_eSol = pInitialNode.m_eSol;
+		m_bInitialized = true;
+	}
+
+	/**
+	 * Child Constructor - A leaf of pParent, with pAssignedList as its Assignments (taken over, not copied). It shares
+	 * the parent's search state: the variable and value orderings and the viable slot buffer.
+	 *
+	 * @param pParent       The node this is a leaf of.
+	 * @param pAssignedList The parent's Assignments with one more item assigned.
+	 */
+	private OTree(OTree pParent, Assignments pAssignedList)
+	{
+		m_pDept = pParent.m_pDept;
+		m_pTbl = pParent.m_pTbl;
+		m_pLeafs = new LeafIterator();
+		m_pRand = pParent.m_pRand;
+		m_pVarOrder = pParent.m_pVarOrder;
+		m_pValOrder = pParent.m_pValOrder;
+		m_pSlotBuf = pParent.m_pSlotBuf;
+		m_pAssigned = pAssignedList;
+		m_pUnassignedList = new ArrayList<>(pParent.m_pUnassignedList);
+		m_eSol = checkGoal();
+		m_bInitialized = true;
+	}
+
+	/**
+	 * Executes the Or-Tree functionality on its current assignment. Evaluates Depthfirst running altern to generate leafs.
+	 * leafs are only generated if something can be successfully assigned to a timeslot. If nothing can be assigned, then leaf evaluates to no and returns.
+	 * This function checks all altern assignments, if they all evaluate to no then no solution can be found.
+	 *
+	 * The depth-first walk does not recurse: the path from this node down to the leaf being expanded is kept on an
+	 * explicit stack, so the depth of the tree is limited by the heap rather than by the thread's stack size.
+	 *
+	 * @return Either a Generated Solution that may or may not be valid (check isValid()) or null if OTree wasn't initialized properly,
+	 * or the search was interrupted.
+	 */
+	public OTree genSolution()
+	{
+		if (!m_bInitialized || Thread.currentThread().isInterrupted())
+			return null;
+
+		if (m_eSol == eSolution.YES)
+			return this; // Found a valid solution or we didn't
+
+		if (SearchOptions.getInstance().isInPlace())
+			return genSolutionInPlace();
+
+		// One set of orderings for the whole search, shared by every node
+		SearchOptions options = SearchOptions.getInstance();
+		m_pVarOrder = new VariableOrdering(m_pAssigned.getModel(), options.getVariableOrder(), m_pRand);
+		m_pValOrder = new ValueOrdering(m_pAssigned.getModel(), options.getValueOrder(), m_pRand);
+		m_pSlotBuf = new int[m_pAssigned.getModel().getNumSlots()];
+
+		// Generate Leaves
+		if (!this.expand())
+			return this;
+
+		// Local Variables
+		OTree[] pStack = new OTree[m_pUnassignedList.size() + 2];
+		int nTop = 0;
+		pStack[0] = this;
+
+		while (nTop >= 0)
+		{
+			if (Thread.currentThread().isInterrupted())
+				return null;
+
+			OTree pNode = pStack[nTop];
+
+			if (!pNode.m_pLeafs.hasNext())
+			{
+				// Every leaf evaluated to no
+				pNode.m_eSol = eSolution.NO;
+				pStack[nTop--] = null;
+				continue;
+			}
+
+			// Build the next leaf
+			OTree pLeaf = pNode.m_pLeafs.next();
+
+			if (pLeaf.m_eSol == eSolution.YES)
+				return pLeaf;
+
+			// Descend into it
+			if (pLeaf.expand())
+				pStack[++nTop] = pLeaf;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Runs altern on this node to set up its leafs. If it has none, it evaluates to no, and the dead end is reported.
+	 *
+	 * @return True if this node has leafs to explore.
+	 */
+	private boolean expand()
+	{
+		this.altern();
+
+		if (!m_pLeafs.hasNext())
+		{
+			m_eSol = eSolution.NO;
+			reportDeadEnd(m_pDept, m_pAssigned, m_pUnassignedList.size());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Runs the search in place on this node's Assignments (see TrailSearch). The result is always this node: on success
+	 * its Assignments hold the solution and it evaluates to yes, otherwise it evaluates to no.
+	 * <p>
+	 * If SearchOptions.isDecompose() is set, the search is first split into independent sub-problems, which are
+	 * searched in parallel (see DecomposedSearch).
+	 *
+	 * @return This OTree.
+	 */
+	private OTree genSolutionInPlace()
+	{
+		boolean found;
+		if (SearchOptions.getInstance().isDecompose())
+			found = new DecomposedSearch(m_pDept, m_pAssigned, m_pUnassignedList, m_pRand).search();
+		else
+			found = new TrailSearch(m_pDept, m_pAssigned, m_pUnassignedList, m_pRand).search();
+
+		if (found)
+		{
+			m_pUnassignedList.clear();
+			m_eSol = eSolution.YES;
+		}
+		else
+		{
+			m_eSol = eSolution.NO;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Called when the search reaches an item with no viable slots. If that is the closest to a full schedule seen so
+	 * far, reports it and writes the partial schedule out.
+	 *
+	 * @param pDept      The Department being scheduled.
+	 * @param pAssigned  The Assignments at the dead end.
+	 * @param nRemaining The number of items still unassigned, not counting the one that could not be placed.
+	 */
+	static synchronized void reportDeadEnd(Department pDept, Assignments pAssigned, int nRemaining)
+	{
+		if (nRemaining < bestTry)
+		{
+			bestTry = nRemaining;
+			System.out.println("New best found: " + bestTry);
+			pAssigned.WriteToFile(pDept.departmentName + ".txt");
+		}
+	}
+
+	private void altern()
+	{
+		// Local Variables
+		m_pLeafs = new LeafIterator(); // Clear Leafs at this level to force Depth-first search
+
+		// Check that Unassigned List is not empty, should have evaluated as valid solution before reaching here.
+		if (m_pUnassignedList.size() > 0)
+		{
+			// Pull Item and get list of possible assignments
+			SlotItem unassignedItem = m_pUnassignedList.remove(selectNext());
+			int item = unassignedItem.getId();
+			int nValid = m_pAssigned.getViableSlotIds(item, m_pSlotBuf);
+
+			// Order them by the search's ValueOrdering
+			m_pValOrder.order(item, m_pSlotBuf, nValid, m_pAssigned, null);
+
+			// Leafs are generated from the ordered assignments as they are needed. The buffer is shared by the whole
+			// search, so this node keeps its own copy of just its slots.
+			m_pLeafs = new LeafIterator(item, Arrays.copyOf(m_pSlotBuf, nValid), nValid);
+		}
+	}
+
+	/**
+	 * Produces the leafs of a node one at a time, in the order of its ordered viable slots. Each call to next() builds
+	 * the child for the next slot from the node's current Assignments and unassigned list.
+	 */
+	private class LeafIterator implements Iterator<OTree>
+	{
+		private final int m_nItem;
+		private final int[] m_pSlots;
+		private final int m_nCount;
+		private int m_nNext;
+
+		/**
+		 * Constructor - No leafs.
+		 */
+		LeafIterator()
+		{
+			this(-1, new int[0], 0);
+		}
+
+		/**
+		 * Constructor - One leaf per slot.
+		 *
+		 * @param nItem  The id of the item being assigned.
+		 * @param pSlots The slots to assign it to, in the order to try them.
+		 * @param nCount The number of slots in pSlots.
+		 */
+		LeafIterator(int nItem, int[] pSlots, int nCount)
+		{
+			m_nItem = nItem;
+			m_pSlots = pSlots;
+			m_nCount = nCount;
+		}
+
+		/**
+		 * Copy Constructor. The copy starts at the same position and moves on independently; the slots are shared,
+		 * as they are never modified.
+		 *
+		 * @param pOther Iterator to copy from.
+		 */
+		LeafIterator(LeafIterator pOther)
+		{
+			this(pOther.m_nItem, pOther.m_pSlots, pOther.m_nCount);
+			m_nNext = pOther.m_nNext;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_nNext < m_nCount;
+		}
+
+		@Override
+		public OTree next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+
+			// New Prob with the Assignment
+			Assignments pNxtAssign = new Assignments(m_pAssigned);
+			pNxtAssign.addAssignment(m_pSlots[m_nNext++], m_nItem);
+
+			// Generate Leaf base on that Prob
+			return new OTree(OTree.this, pNxtAssign);
+		}
+	}
+
+	/**
+	 * Chooses which unassigned item to assign next, using the search's VariableOrdering.
+	 *
+	 * @return The index of the chosen item in the unassigned list.
+	 */
+	private int selectNext()
+	{
+		int[] ids = new int[m_pUnassignedList.size()];
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = m_pUnassignedList.get(i).getId();
+		}
+
+		return m_pVarOrder.select(ids, ids.length, m_pAssigned, null);
+	}
+
+	/**
+	 * Checks goal based on definition of Or-Tree Gv(s):
+	 * Yes iff:
+	 * 1) s = (pr', yes) => This Or-Tree has everything assigned.
+	 * 2) s = (pr', ?, b1, ..., bn), ƎiGv(bi) = yes
+	 * 3) All leafs of s have either sol-entry no or cannot be processed using Altern
+	 *
+	 * @return Result of this Or-Tree
+	 */
+	private eSolution checkGoal()
+	{
+		return (m_pUnassignedList.isEmpty()) ? eSolution.YES : (!m_pLeafs.hasNext()) ? eSolution.NO : eSolution.UNKNOWN;
+	}
+
+	/**
+	 * Check to determine if result is a valid solution.
+	 *
+	 * @return True if the Assignment generated is a valid solution; False otherwise.
+	 */
+	public boolean isValid()
+	{
+		return m_bInitialized && (m_eSol == eSolution.YES);
+	}
+}
@@ -0,0 +1,103 @@
+package ai.project;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Preprocessor class
+ *
+ * Root propagation, run once before the search. Any unassigned item that has only one viable slot left (counting
+ * both its static domain and the assignments already made) has to go there in every solution, so it is assigned
+ * straight away. That narrows the domains of the items it constrains (through incompatibility, lecture/lab and 813/913
+ * overlaps, 500-level slots and slot capacity, exactly as forward checking does; see Domains), which can leave more
+ * items with only one slot. This repeats until no item has a single slot left.
+ *
+ * What is left is a smaller residual problem for the search, and a set of forced assignments that are part of every
+ * solution. If some item is left with no slot at all, there is no solution, and the search need not run.
+ */
+public class Preprocessor
+{
+	private final Assignments assigned;
+	private final Domains domains;
+
+	private final ArrayList<SlotItem> fixed = new ArrayList<>();
+	private SlotItem wipedOut;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param assigned The Assignments to start from (normally the partial assignments). The forced assignments are
+	 *                 added to it.
+	 */
+	public Preprocessor(Assignments assigned)
+	{
+		this.assigned = assigned;
+		this.domains = new Domains(assigned, false);
+	}
+
+	/**
+	 * Fixes every forced assignment, until none is left.
+	 *
+	 * @param unassigned The items still to assign. Every item that gets fixed is removed from it.
+	 * @return False if some item was left with no viable slot, so there is no solution. True otherwise.
+	 */
+	public boolean run(ArrayList<SlotItem> unassigned)
+	{
+		ProblemModel model = assigned.getModel();
+
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+
+			for (Iterator<SlotItem> it = unassigned.iterator(); it.hasNext(); )
+			{
+				SlotItem item = it.next();
+				int id = item.getId();
+				if (assigned.getSlotId(id) != -1) continue;
+
+				int size = domains.size(id);
+				if (size == 0)
+				{
+					wipedOut = item;
+					return false;
+				}
+				if (size > 1) continue;
+
+				int slot = Bits.nextSetBit(domains.get(id), 0);
+				assigned.addAssignment(slot, id);
+				fixed.add(item);
+				it.remove();
+				changed = true;
+
+				if (!domains.assign(id, slot))
+				{
+					wipedOut = model.getItem(domains.getWipedOut());
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the assignments run() was forced to make, in the order it made them.
+	 *
+	 * @return The items that were fixed. Each one's slot can be read from the Assignments.
+	 */
+	public ArrayList<SlotItem> getFixed()
+	{
+		return fixed;
+	}
+
+	/**
+	 * Gets the item that was left with no viable slot, if run() found one.
+	 *
+	 * @return The item, or null if run() succeeded.
+	 */
+	public SlotItem getWipedOut()
+	{
+		return wipedOut;
+	}
+}
@@ -0,0 +1,681 @@
+package ai.project;
+
+import java.util.*;
+
+/**
+ * ProblemModel Class
+ * <p>
+ * A frozen, compiled view of a Department, built once the parser has finished reading it in. Every Lecture/Lab and
+ * every TimeSlot is given a dense integer id, and the attributes that get looked at on every search node are flattened
+ * into arrays indexed by those ids. This lets the search engines work on int[] lookups rather than hashing SlotItems,
+ * TimeSlots and TimePairs over and over.
+ * <p>
+ * Id layout:
+ * - TimeSlots are indexed by TimeTable.index(). Lecture slots get [0, numLectureSlots), lab slots the rest.
+ * - SlotItems are numbered lectures first, then labs, each sorted by name. An item id below getNumLectures() is
+ * always a lecture.
+ * <p>
+ * The model is a snapshot. If the Department is changed after it is built, Department.compile() has to be called again
+ * to get a model that reflects the change.
+ * <p>
+ * The package-private arrays are shared with the search code for speed and must be treated as read-only.
+ */
+public class ProblemModel
+{
+	private final Department department;
+	private final TimeTable timeTable;
+
+	private final SlotItem[] items;
+	private final TimeSlot[] slots;
+	private final int numLectures;
+	private final int numLectureSlots;
+
+	// Slot attributes, indexed by slot id
+	final int[] slotMin;
+	final int[] slotMax;
+	final SlotType[] slotType;
+	final int[] slotStart;
+	final long[][] slotOverlap;
+	private final long[] lectureSlotMask;
+	private final long[] labSlotMask;
+
+	// Item attributes, indexed by item id
+	final int[] itemCourse;
+	final int[] itemParent;
+	final boolean[] itemEvening;
+	final boolean[] item500Level;
+	final int[][] itemIncompatible;
+	final int[][] itemPairs;
+	final int[][] itemLectureLabConflicts;
+	final int[][] itemSpecialConflicts;
+	final boolean[] itemNeeds1800;
+
+	// Number of constraints each item has against other items: incompatibilities, pairs, lecture/lab conflicts and
+	// 813/913 conflicts. Used by VariableOrdering.
+	final int[] itemDegree;
+
+	// Static domain of each item: the slots of its type that pass every hard constraint which does not depend on
+	// any other assignment. See isStaticallyAllowed().
+	final long[][] itemDomain;
+
+	// Preferences, flattened to [item * numSlots + slot], and each item's total over all slots
+	final int[] itemSlotPref;
+	final int[] itemPrefTotal;
+
+	// Zobrist keys, flattened to [item * numSlots + slot]: one random 64-bit key per assignment, XORed together to hash
+	// a set of Assignments (see Assignments.getHash()). The seed is fixed so hashes are the same from run to run.
+	final long[] zobrist;
+	private static final long ZOBRIST_SEED = 433L;
+
+	// Symmetry classes: items that can trade slots in any schedule without changing whether it is valid or what it
+	// scores. Each member of a class shares the same array of member ids, in ascending order, and itemSymmetryRank is
+	// its position in it. Items in no class (or in a class of one) have null. See findSymmetryClasses().
+	final int[][] itemSymmetryClass;
+	final int[] itemSymmetryRank;
+
+	/**
+	 * Compiles a model for the given Department. This assigns ids to all of the Department's TimeSlots and SlotItems.
+	 *
+	 * @param department The fully parsed Department.
+	 */
+	public ProblemModel(Department department)
+	{
+		this.department = department;
+		this.timeTable = department.getTimeTable();
+
+		// Slots
+		slots = timeTable.index();
+		numLectureSlots = timeTable.getNumLectureSlots();
+
+		slotMin = new int[slots.length];
+		slotMax = new int[slots.length];
+		slotType = new SlotType[slots.length];
+		slotStart = new int[slots.length];
+		slotOverlap = new long[slots.length][];
+
+		lectureSlotMask = Bits.create(slots.length);
+		labSlotMask = Bits.create(slots.length);
+
+		for (TimeSlot slot : slots)
+		{
+			int id = slot.getId();
+			Bits.set(slot.isLectureSlot() ? lectureSlotMask : labSlotMask, id);
+			slotMin[id] = slot.getMin();
+			slotMax[id] = slot.getMax();
+			slotType[id] = slot.getSlotType();
+			slotStart[id] = slot.getStartHalfHours();
+			slotOverlap[id] = slot.getOverlapMask();
+		}
+
+		// Items. Sorting by name keeps the ids the same from run to run for the same input.
+		Comparator<SlotItem> byName = Comparator.comparing(SlotItem::toString);
+		ArrayList<SlotItem> lectures = new ArrayList<>(department.getAllLectures());
+		ArrayList<SlotItem> labs = new ArrayList<>(department.getAllLabs());
+		lectures.sort(byName);
+		labs.sort(byName);
+
+		numLectures = lectures.size();
+		items = new SlotItem[lectures.size() + labs.size()];
+
+		int id = 0;
+		for (SlotItem item : lectures)
+		{
+			item.setId(id);
+			items[id++] = item;
+		}
+		for (SlotItem item : labs)
+		{
+			item.setId(id);
+			items[id++] = item;
+		}
+
+		itemCourse = new int[items.length];
+		itemParent = new int[items.length];
+		itemEvening = new boolean[items.length];
+		item500Level = new boolean[items.length];
+		itemIncompatible = new int[items.length][];
+		itemPairs = new int[items.length][];
+		itemNeeds1800 = new boolean[items.length];
+		itemSlotPref = new int[items.length * slots.length];
+		itemPrefTotal = new int[items.length];
+
+		HashMap<String, Integer> courseIds = new HashMap<>();
+
+		for (SlotItem item : items)
+		{
+			int i = item.getId();
+
+			Integer course = courseIds.get(item.getCourseString());
+			if (course == null)
+			{
+				course = courseIds.size();
+				courseIds.put(item.getCourseString(), course);
+			}
+			itemCourse[i] = course;
+
+			itemParent[i] = -1;
+			if (!item.isLecture() && ((Lab) item).hasParent())
+				itemParent[i] = ((Lab) item).getParent().getId();
+
+			itemEvening[i] = item.isEvening();
+			item500Level[i] = item.is500Level();
+			itemIncompatible[i] = toIds(item.getIncompatible());
+			itemPairs[i] = toIds(item.getPairs());
+			itemNeeds1800[i] = isSpecial(item) && (item.getCourseNum() == 813 || item.getCourseNum() == 913);
+
+			// The total includes preferences for slots that aren't in the TimeTable, which can never be met
+			itemPrefTotal[i] = item.getPreferenceTotal();
+			for (Map.Entry<TimeSlot, Integer> pref : item.getPreferences().entrySet())
+			{
+				if (pref.getKey() != null && pref.getKey().getId() >= 0)
+					itemSlotPref[i * slots.length + pref.getKey().getId()] = pref.getValue();
+			}
+		}
+
+		// Items that may not be placed in overlapping slots. Both relations are stored symmetrically, so it doesn't
+		// matter which of the two items is assigned first.
+		ArrayList<HashSet<SlotItem>> lectureLab = new ArrayList<>();
+		ArrayList<HashSet<SlotItem>> special = new ArrayList<>();
+		for (int i = 0; i < items.length; i++)
+		{
+			lectureLab.add(new HashSet<>());
+			special.add(new HashSet<>());
+		}
+
+		HashMap<Integer, ArrayList<SlotItem>> byCourse = new HashMap<>();
+		HashMap<Integer, ArrayList<SlotItem>> byNumber = new HashMap<>();
+		for (SlotItem item : items)
+		{
+			byCourse.computeIfAbsent(itemCourse[item.getId()], k -> new ArrayList<>()).add(item);
+			byNumber.computeIfAbsent(item.getCourseNum(), k -> new ArrayList<>()).add(item);
+		}
+
+		for (SlotItem a : items)
+		{
+			// A lab conflicts with its parent lecture, or with every lecture of the course if it has no parent.
+			if (a.isLecture())
+			{
+				for (SlotItem b : byCourse.get(itemCourse[a.getId()]))
+				{
+					if (b.isLecture()) continue;
+
+					Lab lab = (Lab) b;
+					if (!lab.hasParent() || lab.getParent().equals(a))
+					{
+						lectureLab.get(a.getId()).add(b);
+						lectureLab.get(b.getId()).add(a);
+					}
+				}
+			}
+
+			// CPSC 813/913 may not overlap any section of 313/413 respectively
+			if (isSpecial(a))
+			{
+				ArrayList<SlotItem> counterparts = byNumber.get(specialCounterpart(a.getCourseNum()));
+				if (counterparts == null) continue;
+
+				for (SlotItem b : counterparts)
+				{
+					special.get(a.getId()).add(b);
+					special.get(b.getId()).add(a);
+				}
+			}
+		}
+
+		itemLectureLabConflicts = new int[items.length][];
+		itemSpecialConflicts = new int[items.length][];
+		for (int i = 0; i < items.length; i++)
+		{
+			itemLectureLabConflicts[i] = toIds(lectureLab.get(i));
+			itemSpecialConflicts[i] = toIds(special.get(i));
+		}
+
+		itemDegree = new int[items.length];
+		for (int i = 0; i < items.length; i++)
+		{
+			itemDegree[i] = itemIncompatible[i].length + itemPairs[i].length
+					+ itemLectureLabConflicts[i].length + itemSpecialConflicts[i].length;
+		}
+
+		itemDomain = new long[items.length][];
+		for (int i = 0; i < items.length; i++)
+		{
+			itemDomain[i] = Bits.create(slots.length);
+			for (int slot = getFirstSlotId(isLecture(i)); slot < getEndSlotId(isLecture(i)); slot++)
+			{
+				if (isStaticallyAllowed(slot, i)) Bits.set(itemDomain[i], slot);
+			}
+		}
+
+		Random random = new Random(ZOBRIST_SEED);
+		zobrist = new long[items.length * slots.length];
+		for (int i = 0; i < zobrist.length; i++)
+		{
+			zobrist[i] = random.nextLong();
+		}
+
+		itemSymmetryClass = new int[items.length][];
+		itemSymmetryRank = new int[items.length];
+		if (SearchOptions.getInstance().isSymmetryBreaking()) findSymmetryClasses();
+	}
+
+	// ------------- Symmetry -------------
+
+	/**
+	 * Groups the items into classes of interchangeable items (see interchangeable()). Any permutation of the slots
+	 * within a class turns one schedule into another with the same eval score, so only schedules in which each class
+	 * is in slot order need to be searched: Assignments.constr() requires that of every class member, which cuts the
+	 * search space for a class of k items by up to k!.
+	 * <p>
+	 * Partially assigned items are left out, as they cannot trade slots with anything.
+	 */
+	private void findSymmetryClasses()
+	{
+		// Interchangeable items always belong to the same course, so only those need comparing
+		HashMap<Integer, ArrayList<ArrayList<Integer>>> byCourse = new HashMap<>();
+
+		for (int i = 0; i < items.length; i++)
+		{
+			if (department.hasPartialAssignment(items[i])) continue;
+
+			ArrayList<ArrayList<Integer>> classes = byCourse.computeIfAbsent(itemCourse[i], k -> new ArrayList<>());
+			ArrayList<Integer> home = null;
+			for (ArrayList<Integer> group : classes)
+			{
+				boolean fits = true;
+				for (int other : group)
+				{
+					fits &= interchangeable(i, other);
+				}
+
+				if (fits)
+				{
+					home = group;
+					break;
+				}
+			}
+
+			if (home == null)
+			{
+				home = new ArrayList<>();
+				classes.add(home);
+			}
+			home.add(i);
+		}
+
+		for (ArrayList<ArrayList<Integer>> classes : byCourse.values())
+		{
+			for (ArrayList<Integer> group : classes)
+			{
+				if (group.size() < 2) continue;
+
+				int[] members = new int[group.size()];
+				for (int rank = 0; rank < members.length; rank++)
+				{
+					members[rank] = group.get(rank);
+					itemSymmetryClass[members[rank]] = members;
+					itemSymmetryRank[members[rank]] = rank;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Predicate: can two items trade slots in every schedule? That holds when everything the hard constraints and the
+	 * eval score look at is the same for both: type, course, parent lecture, evening/500-level/813-913 status, static
+	 * domain and preferences, and the items each is incompatible with, paired with or may not overlap (apart from each
+	 * other).
+	 *
+	 * @param a The id of one item.
+	 * @param b The id of the other.
+	 * @return True if the items are interchangeable.
+	 */
+	private boolean interchangeable(int a, int b)
+	{
+		if (isLecture(a) != isLecture(b) || itemCourse[a] != itemCourse[b] || itemParent[a] != itemParent[b])
+			return false;
+		if (itemEvening[a] != itemEvening[b] || item500Level[a] != item500Level[b] || itemNeeds1800[a] != itemNeeds1800[b])
+			return false;
+		if (itemPrefTotal[a] != itemPrefTotal[b] || !Arrays.equals(itemDomain[a], itemDomain[b]))
+			return false;
+		if (!Arrays.equals(itemSlotPref, a * slots.length, (a + 1) * slots.length,
+				itemSlotPref, b * slots.length, (b + 1) * slots.length))
+			return false;
+
+		return sameApartFrom(itemIncompatible[a], itemIncompatible[b], a, b)
+				&& sameApartFrom(itemPairs[a], itemPairs[b], a, b)
+				&& sameApartFrom(itemLectureLabConflicts[a], itemLectureLabConflicts[b], a, b)
+				&& sameApartFrom(itemSpecialConflicts[a], itemSpecialConflicts[b], a, b);
+	}
+
+	/**
+	 * Compares the neighbours of two items, leaving each item out of the other's list.
+	 *
+	 * @param ofA The sorted neighbour ids of item a.
+	 * @param ofB The sorted neighbour ids of item b.
+	 * @return True if ofA without b is the same as ofB without a.
+	 */
+	private static boolean sameApartFrom(int[] ofA, int[] ofB, int a, int b)
+	{
+		int i = 0;
+		int j = 0;
+		while (true)
+		{
+			if (i < ofA.length && ofA[i] == b) i++;
+			if (j < ofB.length && ofB[j] == a) j++;
+			if (i == ofA.length || j == ofB.length) return (i == ofA.length) && (j == ofB.length);
+			if (ofA[i++] != ofB[j++]) return false;
+		}
+	}
+
+	// ------------- Static Hard Constraints -------------
+
+	/**
+	 * The part of Assignments.constr() that depends only on the item and the slot, and not on any other assignments.
+	 * This is evaluated once per (item, slot) pair when the model is built, and the result kept in itemDomain.
+	 *
+	 * @param slot The id of the TimeSlot for the putative assignment.
+	 * @param item The id of the SlotItem being assigned.
+	 * @return True if all of the static hard constraints are met for item assigned to slot.
+	 */
+	private boolean isStaticallyAllowed(int slot, int item)
+	{
+		return (slotMax[slot] > 0
+				&& isNotUnwanted(slot, item)
+				&& eveningClassInEveningSlot(slot, item)
+				&& outsideTuesdayDeadZone(slot)
+				&& specialAt1800(slot, item));
+	}
+
+	/**
+	 * Verifies that a TimeSlot we are considering assigning a SlotItem to is not unwanted for the course we're trying
+	 * to assign.
+	 *
+	 * @param slot The TimeSlot being assigned to.
+	 * @param item The SlotItem being assigned.
+	 * @return False if slot is unwanted for item. True otherwise.
+	 */
+	private boolean isNotUnwanted(int slot, int item)
+	{
+		return !(items[item].hasUnwanted(slots[slot]));
+	}
+
+	/**
+	 * Verifies that an evening SlotItem (course or lecture section beginning with 9) is being assigned to an evening
+	 * TimeSlot (time >= 18:00).
+	 * <p>
+	 * This returns false only if the SlotItem is an evening section, but the TimeSlot is not an evening slot.
+	 * This does NOT return false if the SlotItem is *not* an evening section, but the TimeSlot is an evening slot,
+	 * because that is not a requirement as far as I can see. If this is seen as undesirable, this can be changed
+	 * without much difficulty.
+	 *
+	 * @param slot The TimeSlot being assigned to.
+	 * @param item The SlotItem being assigned.
+	 * @return False if item is an evening section and slot is not an evening slot. True otherwise.
+	 */
+	private boolean eveningClassInEveningSlot(int slot, int item)
+	{
+		return !(itemEvening[item] && slotStart[slot] < 36);
+	}
+
+	/**
+	 * One hard constraint is that nothing can be scheduled on Tuesday between 11:00-12:30.
+	 * This method checks that constraint.
+	 *
+	 * @param slot The TimeSlot being examined.
+	 * @return False if the TimeSlot is in the range of [11:00, 12:30) on Tuesday (lab or lecture). True otherwise.
+	 */
+	private boolean outsideTuesdayDeadZone(int slot)
+	{
+		SlotType type = slotType[slot];
+		int time = slotStart[slot];
+		return !((type == SlotType.TT_LAB || type == SlotType.TT_LEC)
+				&& (time >= 22 && time < 25));
+	}
+
+	/**
+	 * The static half of the special constraint for CPSC 813/913: they must be scheduled at 18:00. The other half (no
+	 * overlap with 313/413) depends on where those are assigned, and is left to Assignments.
+	 *
+	 * @param slot The TimeSlot being examined.
+	 * @param item The SlotItem being assigned.
+	 * @return False if item is CPSC 813/913 and slot does not start at 18:00. True otherwise.
+	 */
+	private boolean specialAt1800(int slot, int item)
+	{
+		return !(itemNeeds1800[item] && slotStart[slot] != 36);
+	}
+
+	/**
+	 * Predicate: is this one of CPSC 313, 413, 813 or 913, which take part in the special 813/913 constraint?
+	 *
+	 * @param item The SlotItem to check.
+	 * @return True if the item is one of the four special courses.
+	 */
+	private static boolean isSpecial(SlotItem item)
+	{
+		return item.getCourseName().equals("CPSC") && specialCounterpart(item.getCourseNum()) != -1;
+	}
+
+	/**
+	 * Gets the course number paired with a course number under the special 813/913 constraint: 313 with 813, and
+	 * 413 with 913 (in both directions).
+	 *
+	 * @param courseNum The course number.
+	 * @return The counterpart course number, or -1 if the course is not part of the special constraint.
+	 */
+	private static int specialCounterpart(int courseNum)
+	{
+		switch (courseNum)
+		{
+			case 313:
+				return 813;
+			case 413:
+				return 913;
+			case 813:
+				return 313;
+			case 913:
+				return 413;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Converts a collection of SlotItems into a sorted array of their ids. Items that do not belong to this model
+	 * (i.e. were never given an id) are dropped.
+	 *
+	 * @param from The SlotItems to convert.
+	 * @return The ids of the given items, in ascending order.
+	 */
+	private static int[] toIds(Collection<SlotItem> from)
+	{
+		int[] rv = new int[from.size()];
+		int count = 0;
+		for (SlotItem item : from)
+		{
+			if (item.getId() >= 0) rv[count++] = item.getId();
+		}
+		rv = Arrays.copyOf(rv, count);
+		Arrays.sort(rv);
+		return rv;
+	}
+
+	// ------------- Getters -------------
+
+	public Department getDepartment()
+	{
+		return department;
+	}
+
+	public TimeTable getTimeTable()
+	{
+		return timeTable;
+	}
+
+	/**
+	 * @return The number of SlotItems (lectures and labs) in the model.
+	 */
+	public int getNumItems()
+	{
+		return items.length;
+	}
+
+	/**
+	 * @return The number of lectures in the model. Ids below this value are lectures; the rest are labs.
+	 */
+	public int getNumLectures()
+	{
+		return numLectures;
+	}
+
+	/**
+	 * @return The number of TimeSlots (lecture and lab) in the model.
+	 */
+	public int getNumSlots()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * Gets the SlotItem with the given id.
+	 *
+	 * @param id The id of the item.
+	 * @return The SlotItem with that id.
+	 */
+	public SlotItem getItem(int id)
+	{
+		return items[id];
+	}
+
+	/**
+	 * Gets the TimeSlot with the given id.
+	 *
+	 * @param id The id of the slot.
+	 * @return The TimeSlot with that id.
+	 */
+	public TimeSlot getSlot(int id)
+	{
+		return slots[id];
+	}
+
+	/**
+	 * Predicate: do the two slots overlap in time?
+	 *
+	 * @param slot  The id of one slot.
+	 * @param other The id of the other slot.
+	 * @return True if the slots overlap.
+	 */
+	public boolean overlaps(int slot, int other)
+	{
+		return Bits.get(slotOverlap[slot], other);
+	}
+
+	/**
+	 * Gets the preference penalty for placing an item in a slot: the sum of its preferences for every other slot.
+	 *
+	 * @param item The id of the item.
+	 * @param slot The id of the slot.
+	 * @return The item's total preference value minus its preference for the slot.
+	 */
+	public int getPreferencePenalty(int item, int slot)
+	{
+		return itemPrefTotal[item] - itemSlotPref[item * slots.length + slot];
+	}
+
+	/**
+	 * Gets the static domain of an item: every slot it could be assigned to if nothing else were assigned. The
+	 * returned array is shared and must not be modified.
+	 *
+	 * @param item The id of the item.
+	 * @return The bitset of slots that pass the static hard constraints for the item.
+	 */
+	public long[] getDomain(int item)
+	{
+		return itemDomain[item];
+	}
+
+	/**
+	 * Predicate: is the slot in the item's static domain?
+	 *
+	 * @param item The id of the item.
+	 * @param slot The id of the slot.
+	 * @return True if the slot passes every static hard constraint for the item.
+	 */
+	public boolean inDomain(int item, int slot)
+	{
+		return Bits.get(itemDomain[item], slot);
+	}
+
+	/**
+	 * Gets the class of items interchangeable with an item (see findSymmetryClasses()). The returned array is shared
+	 * and must not be modified.
+	 *
+	 * @param item The id of the item.
+	 * @return The ids of every item in its class, the item included, in ascending order; or null if it has none.
+	 */
+	public int[] getSymmetryClass(int item)
+	{
+		return itemSymmetryClass[item];
+	}
+
+	/**
+	 * Gets every item whose static domain is empty. None of these can be assigned to any slot, so unless they are
+	 * partially assigned, the problem has no solution.
+	 *
+	 * @return The items with no statically allowed slot, in id order.
+	 */
+	public ArrayList<SlotItem> getItemsWithEmptyDomain()
+	{
+		ArrayList<SlotItem> rv = new ArrayList<>();
+		for (int i = 0; i < items.length; i++)
+		{
+			if (Bits.nextSetBit(itemDomain[i], 0) == -1) rv.add(items[i]);
+		}
+		return rv;
+	}
+
+	/**
+	 * Predicate: is the item with the given id a lecture?
+	 *
+	 * @param item The id of the item.
+	 * @return True if the item is a lecture, false if it is a lab.
+	 */
+	public boolean isLecture(int item)
+	{
+		return item < numLectures;
+	}
+
+	/**
+	 * Gets the first slot id that an item of the given type could be assigned to.
+	 *
+	 * @param isLecture True for lecture slots, false for lab slots.
+	 * @return The lowest slot id of that type.
+	 */
+	public int getFirstSlotId(boolean isLecture)
+	{
+		return isLecture ? 0 : numLectureSlots;
+	}
+
+	/**
+	 * Gets the bitset of all slot ids of the given type. The returned array is shared and must not be modified.
+	 *
+	 * @param isLecture True for lecture slots, false for lab slots.
+	 * @return The bitset of slots of that type.
+	 */
+	public long[] getSlotTypeMask(boolean isLecture)
+	{
+		return isLecture ? lectureSlotMask : labSlotMask;
+	}
+
+	/**
+	 * Gets the slot id one past the last slot of the given type.
+	 *
+	 * @param isLecture True for lecture slots, false for lab slots.
+	 * @return One past the highest slot id of that type.
+	 */
+	public int getEndSlotId(boolean isLecture)
+	{
+		return isLecture ? numLectureSlots : slots.length;
+	}
+}
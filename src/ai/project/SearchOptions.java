@@ -0,0 +1,439 @@
+package ai.project;
+
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * SearchOptions Class
+ *
+ * Container for the settings that control how the Or-Tree search runs. Like Penalties, this is a singleton because it
+ * is effectively global: Main fills it in from the config file, and every OTree reads from it.
+ *
+ * Every option is optional in the config file; anything that is not given keeps its default:
+ *  1. searchInPlace: run the Or-Tree search on a single Assignments with an undo trail, instead of copying the
+ *     Assignments for every child node. (default true)
+ *  2. forwardChecking: keep the remaining slots of every unassigned item up to date as assignments are made, and back
+ *     out of an assignment as soon as it leaves some item with no slots. Only used by the in-place search.
+ *     (default true)
+ *  3. variableOrder: how the search chooses the next item to assign; one of random, mrv, degree or mrv_degree. See
+ *     VariableOrdering. (default mrv_degree)
+ *  4. valueOrder: the order the search tries the slots of an item in; one of random, eval, lcv or slot_pressure. See
+ *     ValueOrdering. (default eval)
+ *  5. searchSeed: seed for the random tie-breaking in the search. Each search gets its own Random, seeded with this
+ *     plus the number of searches started before it, so a run can be repeated exactly. (default: none, seeded from
+ *     the clock)
+ *  6. backjumping: when an item runs out of slots, jump straight back to the most recent assignment to blame for it,
+ *     instead of the one just before it. Needs forwardChecking. (default true)
+ *  7. nogoodCapacity: the most nogoods (combinations of assignments known to lead nowhere) the search keeps at once,
+ *     when backjumping. 0 turns them off. (default 10000)
+ *  8. nogoodMaxLength: the most assignments a nogood can have and still be kept. (default 32)
+ *  9. branchAndBound: instead of stopping at the first schedule and improving it with the SetSearch, search for the
+ *     schedule with the lowest eval score, cutting off any partial schedule that cannot beat the best found so far.
+ *     (default false)
+ * 10. branchAndBoundSeconds: how long the branch-and-bound search may run for before it reports the best schedule it
+ *     has found; 0 for no limit. (default 60)
+ * 11. transpositionTableSize: the number of entries in the table of search states already known to be dead ends (or
+ *     no better than a known bound), shared by every search on a Department; 0 turns it off. (default 262144)
+ * 12. symmetryBreaking: find items that are interchangeable (the same in every way that matters to the constraints
+ *     and the eval score) and only search schedules that put each group of them in slot order. Has to be set before
+ *     the input is parsed. (default true)
+ * 13. decompose: split the in-place search into sub-problems that share nothing but slot capacity, and search them on
+ *     separate threads. See DecomposedSearch. (default true)
+ * 14. preprocess: before searching, assign every item that has only one viable slot left, and keep doing so until
+ *     none has. See Preprocessor. (default true)
+ * 15. restarts: abandon a search run once it has taken back a set number of assignments, and start again with a new
+ *     seed, the number growing by the Luby sequence from run to run. Only used by the in-place search. (default false)
+ * 16. restartBase: the failure budget of a run when the Luby sequence is at 1. (default 100)
+ * 17. restartKeepWeights: keep a count of how often each item has failed, and carry it from run to run, so that the
+ *     variable ordering tries those items earlier. (default true)
+ * 18. discrepancySearch: like branchAndBound, but search by limited discrepancy: first the schedule the value ordering
+ *     likes best, then every schedule that strays from it once, then twice, and so on. Also limited by
+ *     branchAndBoundSeconds. (default false)
+ * 19. beamSearch: build the two schedules the SetSearch starts from with a BeamSearch instead of the Or-Tree, falling
+ *     back on the Or-Tree if it finds fewer. (default false)
+ * 20. beamStrategy: how the BeamSearch keeps its frontier; one of beam or best_first. See BeamSearch. (default beam)
+ * 21. beamWidth: the most partial schedules a beam keeps from one item to the next. (default 100)
+ * 22. beamMaxStates: memory cap for the BeamSearch; the most partial schedules it holds at once. (default 100000)
+ * 23. feasibilityCheck: before searching, check the capacity and pigeonhole bounds in FeasibilityCheck, and stop
+ *     straight away if one cannot be met. (default true)
+ * 24. matchingCheck: at every node of the in-place search, check that the unassigned items can all be matched to
+ *     slots with room for them at the same time, and back out if not. See SlotMatching. (default true)
+ * 25. matchingHint: try each item's matched slot before the others, whatever the valueOrder. Needs matchingCheck.
+ *     (default false)
+ * 26. greedyConstruct: build the schedules the SetSearch starts from with the GreedyConstructor (DSatur), and only
+ *     fall back on the Or-Tree if it builds fewer than two. (default true)
+ * 27. greedyPopulation: how many schedules the GreedyConstructor tries to build. (default 10)
+ * 28. greedyRepairFailures: the failure budget of each search the GreedyConstructor runs to fit in the items it
+ *     could not place. (default 1000)
+ */
+public class SearchOptions {
+    private boolean inPlace;
+    private boolean forwardChecking;
+    private VariableOrdering.Strategy variableOrder;
+    private ValueOrdering.Strategy valueOrder;
+    private Long seed;
+    private boolean backjumping;
+    private int nogoodCapacity;
+    private int nogoodMaxLength;
+    private boolean branchAndBound;
+    private int branchAndBoundSeconds;
+    private int transpositionTableSize;
+    private boolean symmetryBreaking;
+    private boolean decompose;
+    private boolean preprocess;
+    private boolean restarts;
+    private int restartBase;
+    private boolean restartKeepWeights;
+    private boolean discrepancySearch;
+    private boolean beamSearch;
+    private BeamSearch.Strategy beamStrategy;
+    private int beamWidth;
+    private int beamMaxStates;
+    private boolean feasibilityCheck;
+    private boolean matchingCheck;
+    private boolean matchingHint;
+    private boolean greedyConstruct;
+    private int greedyPopulation;
+    private int greedyRepairFailures;
+    private long searchesStarted;
+
+    private static final SearchOptions instance = new SearchOptions();
+
+    public static SearchOptions getInstance() { return instance; }
+
+    private SearchOptions() {
+        inPlace = true;
+        forwardChecking = true;
+        variableOrder = VariableOrdering.Strategy.MRV_DEGREE;
+        valueOrder = ValueOrdering.Strategy.EVAL;
+        seed = null;
+        backjumping = true;
+        nogoodCapacity = 10000;
+        nogoodMaxLength = 32;
+        branchAndBound = false;
+        branchAndBoundSeconds = 60;
+        transpositionTableSize = 1 << 18;
+        symmetryBreaking = true;
+        decompose = true;
+        preprocess = true;
+        restarts = false;
+        restartBase = 100;
+        restartKeepWeights = true;
+        discrepancySearch = false;
+        beamSearch = false;
+        beamStrategy = BeamSearch.Strategy.BEAM;
+        beamWidth = 100;
+        beamMaxStates = 100000;
+        feasibilityCheck = true;
+        matchingCheck = true;
+        matchingHint = false;
+        greedyConstruct = true;
+        greedyPopulation = 10;
+        greedyRepairFailures = 1000;
+    }
+
+    /**
+     * Reads any search options present in a set of config properties. Options that are missing are left as they are.
+     *
+     * @param prop The properties read from the config file.
+     */
+    public void load(Properties prop) {
+        inPlace = getBoolean(prop, "searchInPlace", inPlace);
+        forwardChecking = getBoolean(prop, "forwardChecking", forwardChecking);
+        variableOrder = getEnum(prop, "variableOrder", variableOrder);
+        valueOrder = getEnum(prop, "valueOrder", valueOrder);
+
+        String seedValue = prop.getProperty("searchSeed");
+        if (seedValue != null) seed = Long.parseLong(seedValue.trim());
+
+        backjumping = getBoolean(prop, "backjumping", backjumping);
+        nogoodCapacity = getInt(prop, "nogoodCapacity", nogoodCapacity);
+        nogoodMaxLength = getInt(prop, "nogoodMaxLength", nogoodMaxLength);
+        branchAndBound = getBoolean(prop, "branchAndBound", branchAndBound);
+        branchAndBoundSeconds = getInt(prop, "branchAndBoundSeconds", branchAndBoundSeconds);
+        transpositionTableSize = getInt(prop, "transpositionTableSize", transpositionTableSize);
+        symmetryBreaking = getBoolean(prop, "symmetryBreaking", symmetryBreaking);
+        decompose = getBoolean(prop, "decompose", decompose);
+        preprocess = getBoolean(prop, "preprocess", preprocess);
+        restarts = getBoolean(prop, "restarts", restarts);
+        restartBase = getInt(prop, "restartBase", restartBase);
+        restartKeepWeights = getBoolean(prop, "restartKeepWeights", restartKeepWeights);
+        discrepancySearch = getBoolean(prop, "discrepancySearch", discrepancySearch);
+        beamSearch = getBoolean(prop, "beamSearch", beamSearch);
+        beamStrategy = getEnum(prop, "beamStrategy", beamStrategy);
+        beamWidth = getInt(prop, "beamWidth", beamWidth);
+        beamMaxStates = getInt(prop, "beamMaxStates", beamMaxStates);
+        feasibilityCheck = getBoolean(prop, "feasibilityCheck", feasibilityCheck);
+        matchingCheck = getBoolean(prop, "matchingCheck", matchingCheck);
+        matchingHint = getBoolean(prop, "matchingHint", matchingHint);
+        greedyConstruct = getBoolean(prop, "greedyConstruct", greedyConstruct);
+        greedyPopulation = getInt(prop, "greedyPopulation", greedyPopulation);
+        greedyRepairFailures = getInt(prop, "greedyRepairFailures", greedyRepairFailures);
+    }
+
+    private static boolean getBoolean(Properties prop, String key, boolean current) {
+        String value = prop.getProperty(key);
+        return (value == null) ? current : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int getInt(Properties prop, String key, int current) {
+        String value = prop.getProperty(key);
+        return (value == null) ? current : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Reads an enum option. Values are matched ignoring case, with '-' accepted in place of '_'.
+     *
+     * @throws IllegalArgumentException Thrown if the value is not one of the enum's constants.
+     */
+    private static <E extends Enum<E>> E getEnum(Properties prop, String key, E current) {
+        String value = prop.getProperty(key);
+        if (value == null) return current;
+        return Enum.valueOf(current.getDeclaringClass(), value.trim().toUpperCase().replace('-', '_'));
+    }
+
+
+    /**
+     * Creates the Random for a new search. If a seed has been set, the n-th search started gets seed + n, so a run is
+     * repeatable while each search still explores differently. Otherwise the Random is seeded from the clock.
+     *
+     * @return A new Random for one search.
+     */
+    public synchronized Random newRandom() {
+        long n = searchesStarted++;
+        return (seed == null) ? new Random() : new Random(seed + n);
+    }
+
+
+    // ----------- Getters and Setters -------------
+
+    public boolean isInPlace() {
+        return inPlace;
+    }
+
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
+    public VariableOrdering.Strategy getVariableOrder() {
+        return variableOrder;
+    }
+
+    public void setVariableOrder(VariableOrdering.Strategy variableOrder) {
+        this.variableOrder = variableOrder;
+    }
+
+    public ValueOrdering.Strategy getValueOrder() {
+        return valueOrder;
+    }
+
+    public void setValueOrder(ValueOrdering.Strategy valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the search seed, and starts counting searches again from zero.
+     *
+     * @param seed The new seed, or null to seed from the clock.
+     */
+    public synchronized void setSeed(Long seed) {
+        this.seed = seed;
+        searchesStarted = 0;
+    }
+
+    public boolean isBackjumping() {
+        return backjumping;
+    }
+
+    public void setBackjumping(boolean backjumping) {
+        this.backjumping = backjumping;
+    }
+
+    public int getNogoodCapacity() {
+        return nogoodCapacity;
+    }
+
+    public void setNogoodCapacity(int nogoodCapacity) {
+        this.nogoodCapacity = nogoodCapacity;
+    }
+
+    public int getNogoodMaxLength() {
+        return nogoodMaxLength;
+    }
+
+    public void setNogoodMaxLength(int nogoodMaxLength) {
+        this.nogoodMaxLength = nogoodMaxLength;
+    }
+
+    public boolean isBranchAndBound() {
+        return branchAndBound;
+    }
+
+    public void setBranchAndBound(boolean branchAndBound) {
+        this.branchAndBound = branchAndBound;
+    }
+
+    public int getBranchAndBoundSeconds() {
+        return branchAndBoundSeconds;
+    }
+
+    public void setBranchAndBoundSeconds(int branchAndBoundSeconds) {
+        this.branchAndBoundSeconds = branchAndBoundSeconds;
+    }
+
+    public int getTranspositionTableSize() {
+        return transpositionTableSize;
+    }
+
+    public void setTranspositionTableSize(int transpositionTableSize) {
+        this.transpositionTableSize = transpositionTableSize;
+    }
+
+    public boolean isSymmetryBreaking() {
+        return symmetryBreaking;
+    }
+
+    public void setSymmetryBreaking(boolean symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+    }
+
+    public boolean isDecompose() {
+        return decompose;
+    }
+
+    public void setDecompose(boolean decompose) {
+        this.decompose = decompose;
+    }
+
+    public boolean isPreprocess() {
+        return preprocess;
+    }
+
+    public void setPreprocess(boolean preprocess) {
+        this.preprocess = preprocess;
+    }
+
+    public boolean isRestarts() {
+        return restarts;
+    }
+
+    public void setRestarts(boolean restarts) {
+        this.restarts = restarts;
+    }
+
+    public int getRestartBase() {
+        return restartBase;
+    }
+
+    public void setRestartBase(int restartBase) {
+        this.restartBase = restartBase;
+    }
+
+    public boolean isRestartKeepWeights() {
+        return restartKeepWeights;
+    }
+
+    public void setRestartKeepWeights(boolean restartKeepWeights) {
+        this.restartKeepWeights = restartKeepWeights;
+    }
+
+    public boolean isDiscrepancySearch() {
+        return discrepancySearch;
+    }
+
+    public void setDiscrepancySearch(boolean discrepancySearch) {
+        this.discrepancySearch = discrepancySearch;
+    }
+
+    public boolean isBeamSearch() {
+        return beamSearch;
+    }
+
+    public void setBeamSearch(boolean beamSearch) {
+        this.beamSearch = beamSearch;
+    }
+
+    public BeamSearch.Strategy getBeamStrategy() {
+        return beamStrategy;
+    }
+
+    public void setBeamStrategy(BeamSearch.Strategy beamStrategy) {
+        this.beamStrategy = beamStrategy;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public void setBeamWidth(int beamWidth) {
+        this.beamWidth = beamWidth;
+    }
+
+    public int getBeamMaxStates() {
+        return beamMaxStates;
+    }
+
+    public void setBeamMaxStates(int beamMaxStates) {
+        this.beamMaxStates = beamMaxStates;
+    }
+
+    public boolean isFeasibilityCheck() {
+        return feasibilityCheck;
+    }
+
+    public void setFeasibilityCheck(boolean feasibilityCheck) {
+        this.feasibilityCheck = feasibilityCheck;
+    }
+
+    public boolean isMatchingCheck() {
+        return matchingCheck;
+    }
+
+    public void setMatchingCheck(boolean matchingCheck) {
+        this.matchingCheck = matchingCheck;
+    }
+
+    public boolean isMatchingHint() {
+        return matchingHint;
+    }
+
+    public void setMatchingHint(boolean matchingHint) {
+        this.matchingHint = matchingHint;
+    }
+
+    public boolean isGreedyConstruct() {
+        return greedyConstruct;
+    }
+
+    public void setGreedyConstruct(boolean greedyConstruct) {
+        this.greedyConstruct = greedyConstruct;
+    }
+
+    public int getGreedyPopulation() {
+        return greedyPopulation;
+    }
+
+    public void setGreedyPopulation(int greedyPopulation) {
+        this.greedyPopulation = greedyPopulation;
+    }
+
+    public int getGreedyRepairFailures() {
+        return greedyRepairFailures;
+    }
+
+    public void setGreedyRepairFailures(int greedyRepairFailures) {
+        this.greedyRepairFailures = greedyRepairFailures;
+    }
+
+    public boolean isForwardChecking() {
+        return forwardChecking;
+    }
+
+    public void setForwardChecking(boolean forwardChecking) {
+        this.forwardChecking = forwardChecking;
+    }
+}
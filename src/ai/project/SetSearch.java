@@ -69,13 +69,13 @@ public class SetSearch
 		ArrayList<SlotItem> evolutionList = new ArrayList<>();
 		evolutionList.addAll(department.getAllCourses());
 
-        Assignments child;
-		if (department.getPartialAssignments() != null) {
-            evolutionList.removeAll(department.getPartialAssignments().getAllCourses());
-            child = new Assignments(department.getPartialAssignments());
+        // getPartialAssignments() hands back a copy that shares its structure with the department's partials
+        Assignments child = department.getPartialAssignments();
+		if (child != null) {
+            evolutionList.removeAll(child.getAllCourses());
         }
         else {
-            child = new Assignments(department.getTimeTable());
+            child = new Assignments(department.getModel());
         }
 
 		ArrayList<SlotItem> unassigned = new ArrayList<>();
@@ -92,24 +92,18 @@ public class SetSearch
 			TimeSlot slotA = firstChoice.getTimeSlot(randomItem);
 			TimeSlot slotB = secondChoice.getTimeSlot(randomItem);
 
-			ArrayList<Evaluated> result = child.getViableTimeSlots(department.getTimeTable(), randomItem);
-
+			// Take the slot from the chosen parent if it is still viable, otherwise the other parent's
 			boolean assigned = false;
 
-			for (Evaluated evaluated : result)
+			if (slotA != null && child.constr(slotA, randomItem))
+			{
+				child.addAssignment(slotA, randomItem);
+				assigned = true;
+			}
+			else if (slotB != null && child.constr(slotB, randomItem))
 			{
-				if (evaluated.getTimeSlot().equals(slotA))
-				{
-					child.addAssignment(slotA, randomItem);
-					assigned = true;
-					break;
-				}
-				else if (evaluated.getTimeSlot().equals(slotB))
-				{
-					child.addAssignment(slotB, randomItem);
-					assigned = true;
-					break;
-				}
+				child.addAssignment(slotB, randomItem);
+				assigned = true;
 			}
 			if (!assigned)
 			{
@@ -118,9 +112,9 @@ public class SetSearch
 		}
 
 		OTree childTree = new OTree(department, child, unassigned);
-		childTree.genSolution();
+		OTree solution = childTree.genSolution();
 
-		return childTree;
+		return (solution != null) ? solution : childTree;
 	}
 }
 
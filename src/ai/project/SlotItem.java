@@ -20,10 +20,21 @@ public abstract class SlotItem {
     private HashMap<TimeSlot, Integer> preferences;
     private HashSet<SlotItem> pairs;
 
+    // Running sum of all preference values, so it doesn't need to be re-added on every eval
+    private int preferenceTotal;
+
+    // Dense index of this item within the compiled ProblemModel; -1 until the model is built.
+    private int id = -1;
+
+    // The identifying fields never change after construction, so the hash is computed once here rather than
+    // rehashing the course name on every lookup.
+    private final int hash;
+
     public SlotItem(String name, int courseNum, int secNum) {
         courseName = name;
         this.courseNum = courseNum;
         this.secNum = secNum;
+        hash = (courseNum * 10000) + (secNum * 100) + name.hashCode();
         pairs = new HashSet<>();
         preferences = new HashMap<>();
         incompatible = new HashSet<>();
@@ -56,7 +67,8 @@ public abstract class SlotItem {
      * @param pref The preference value for the preferred time slot.
      */
     public void addPreference(TimeSlot slot, int pref) {
-       preferences.put(slot, pref);
+        Integer old = preferences.put(slot, pref);
+        preferenceTotal += pref - ((old == null) ? 0 : old);
     }
 
     /**
@@ -182,6 +194,24 @@ public abstract class SlotItem {
         return courseNum;
     }
 
+    /**
+     * Gets the dense integer id of this item, as assigned by the ProblemModel.
+     *
+     * @return The id of this item, or -1 if no ProblemModel has been compiled for its department yet.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets the dense id of this item. Only the ProblemModel should call this.
+     *
+     * @param id The new id of this item.
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Gets an integer value representing this SlotItem's preference for a particular TimeSlot.
      *
@@ -201,14 +231,25 @@ public abstract class SlotItem {
      * @return The sum of all preference values for every time slot other than the one given.
      */
     public int getPreferencesForOtherSlots(TimeSlot time) {
-        Integer prefForThisSlot = getPreferenceForSlot(time);
-        Collection<Integer> allPrefs = preferences.values();
-        int count = 0;
-        for (Integer i : allPrefs) {
-            count += i;
-        }
-        count -= prefForThisSlot;
-        return count;
+        return preferenceTotal - getPreferenceForSlot(time);
+    }
+
+    /**
+     * Gets the sum of all of this SlotItem's preference values.
+     *
+     * @return The total of all preference values.
+     */
+    public int getPreferenceTotal() {
+        return preferenceTotal;
+    }
+
+    /**
+     * Get all of this SlotItem's preferences.
+     *
+     * @return A copy of the map of TimeSlots to preference values.
+     */
+    public HashMap<TimeSlot, Integer> getPreferences() {
+        return new HashMap<>(preferences);
     }
 
     /**
@@ -220,6 +261,15 @@ public abstract class SlotItem {
         return new HashSet<>(pairs);
     }
 
+    /**
+     * Get the set of all courses this SlotItem is incompatible with.
+     *
+     * @return A HashSet containing all SlotItems with which this SlotItem is incompatible.
+     */
+    public HashSet<SlotItem> getIncompatible() {
+        return new HashSet<>(incompatible);
+    }
+
     /**
      * Gets a string identifying this course.
      *
@@ -231,10 +281,7 @@ public abstract class SlotItem {
 
     @Override
     public int hashCode() {
-	int rv = courseNum * 10000;
-	rv += secNum * 100;
-	rv += courseName.hashCode();
-	return rv;
+        return hash;
     }
 
 }
@@ -0,0 +1,353 @@
+package ai.project;
+
+import java.util.Arrays;
+
+/**
+ * SlotMatching class
+ *
+ * A maximum b-matching between the unassigned items and the slots: every item is matched to one slot in its domain,
+ * and no slot is matched to more items than it has room left for. If no matching covers every unassigned item, there
+ * is no way to finish the schedule, even though each item on its own may still have somewhere to go. That makes this
+ * a much stronger check than looking for empty domains: three items that can only go in the same two slots of
+ * capacity one each are caught straight away.
+ *
+ * The matching is found with Hopcroft-Karp: each phase finds the shortest augmenting paths from every unmatched item
+ * (by breadth-first search over item -> slot -> the items matched to that slot) and then augments along as many of
+ * them as it can at once (by depth-first search along those layers).
+ *
+ * It is incremental. Moving down the search only takes edges and room away, so update() keeps every match that is
+ * still valid (the slot is still in the item's domain, and has room for all the items matched to it), unmatches the
+ * rest, and only has to find augmenting paths for those. Moving back up only gives edges and room back, so the old
+ * matching is still valid, apart from the item whose assignment was undone, which needs a slot again. Nothing has to
+ * be undone on backtrack.
+ *
+ * An item's matched slot is also a good first slot to try for it: it is one that leaves room for every other item.
+ */
+public class SlotMatching
+{
+	private final ProblemModel model;
+	private final Assignments assigned;
+
+	// The slot each item is matched to (-1 if none), and the items matched to each slot, as a doubly linked list
+	private final int[] matchOf;
+	private final int[] load;
+	private final int[] first;
+	private final int[] next;
+	private final int[] prev;
+
+	// The items to match in the current update(), marked with the update's stamp, and their domains
+	private final int[] mark;
+	private int stamp;
+	private final long[][] domainOf;
+	private final long[][] scratch;
+	private final int[] free;
+	private int numFree;
+
+	// Hopcroft-Karp layers and queue
+	private static final int UNREACHED = Integer.MAX_VALUE;
+	private final int[] dist;
+	private final int[] queue;
+
+	// The augmenting path being followed by extend(), and how far along its slots each item on it has got
+	private final int[] path;
+	private final int[] scanSlot;
+	private final int[] scanOther;
+
+	/**
+	 * Constructor. The matching starts out empty.
+	 *
+	 * @param assigned The Assignments being searched. The room left in each slot is read from it.
+	 */
+	public SlotMatching(Assignments assigned)
+	{
+		this.model = assigned.getModel();
+		this.assigned = assigned;
+
+		int numItems = model.getNumItems();
+		int numSlots = model.getNumSlots();
+		matchOf = new int[numItems];
+		Arrays.fill(matchOf, -1);
+		load = new int[numSlots];
+		first = new int[numSlots];
+		Arrays.fill(first, -1);
+		next = new int[numItems];
+		prev = new int[numItems];
+
+		mark = new int[numItems];
+		domainOf = new long[numItems][];
+		scratch = new long[numItems][];
+		free = new int[numItems];
+		dist = new int[numItems];
+		queue = new int[numItems];
+		path = new int[numItems];
+		scanSlot = new int[numItems];
+		scanOther = new int[numItems];
+	}
+
+	/**
+	 * Brings the matching up to date with the Assignments and domains, and extends it to cover every item if it can.
+	 *
+	 * @param items   Buffer holding the ids of the unassigned items.
+	 * @param count   The number of ids in items.
+	 * @param domains The live domains of the unassigned items, or null if they are not being kept, in which case the
+	 *                viable slots of each item are worked out from the Assignments.
+	 * @return True if every item is matched. False if no matching covers them all, so they cannot all be assigned.
+	 */
+	public boolean update(int[] items, int count, Domains domains)
+	{
+		stamp++;
+		for (int i = 0; i < count; i++)
+		{
+			int item = items[i];
+			mark[item] = stamp;
+			if (domains != null)
+			{
+				domainOf[item] = domains.get(item);
+			}
+			else
+			{
+				if (scratch[item] == null) scratch[item] = Bits.create(model.getNumSlots());
+				assigned.getViableSlotMask(item, scratch[item]);
+				domainOf[item] = scratch[item];
+			}
+		}
+
+		// Drop the matches that are no longer valid: items that have been assigned, and slots that have left a domain
+		for (int item = 0; item < matchOf.length; item++)
+		{
+			int slot = matchOf[item];
+			if (slot != -1 && (mark[item] != stamp || !Bits.get(domainOf[item], slot))) unmatch(item);
+		}
+
+		// ...and the matches a slot no longer has room for
+		for (int slot = 0; slot < load.length; slot++)
+		{
+			int room = room(slot);
+			while (load[slot] > room)
+			{
+				unmatch(first[slot]);
+			}
+		}
+
+		numFree = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (matchOf[items[i]] == -1) free[numFree++] = items[i];
+		}
+
+		return augment();
+	}
+
+	/**
+	 * Gets the slot an item is matched to.
+	 *
+	 * @param item The id of the item.
+	 * @return The slot id, or -1 if the item is not matched (or the last update() failed before reaching it).
+	 */
+	public int getMatch(int item)
+	{
+		return matchOf[item];
+	}
+
+	/**
+	 * Gets the number of items the last update() could not match.
+	 *
+	 * @return The number of unmatched items; 0 if update() succeeded.
+	 */
+	public int getNumUnmatched()
+	{
+		return numFree;
+	}
+
+	/**
+	 * Runs Hopcroft-Karp phases until every free item is matched, or a phase finds no augmenting path.
+	 *
+	 * @return True if every free item was matched.
+	 */
+	private boolean augment()
+	{
+		while (numFree > 0)
+		{
+			if (!layer()) return false;
+
+			int stillFree = 0;
+			for (int i = 0; i < numFree; i++)
+			{
+				if (!extend(free[i])) free[stillFree++] = free[i];
+			}
+			if (stillFree == numFree) return false;
+			numFree = stillFree;
+		}
+		return true;
+	}
+
+	/**
+	 * Breadth-first search from the free items, numbering each item reached by the length of the shortest
+	 * alternating path to it.
+	 *
+	 * @return True if some slot with room to spare can be reached, so there is an augmenting path.
+	 */
+	private boolean layer()
+	{
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < numFree; i++)
+		{
+			dist[free[i]] = 0;
+			queue[tail++] = free[i];
+		}
+		for (int item = 0; item < matchOf.length; item++)
+		{
+			if (matchOf[item] != -1) dist[item] = UNREACHED;
+		}
+
+		boolean found = false;
+		while (head < tail)
+		{
+			int item = queue[head++];
+			long[] domain = domainOf[item];
+			for (int slot = Bits.nextSetBit(domain, 0); slot != -1; slot = Bits.nextSetBit(domain, slot + 1))
+			{
+				if (load[slot] < room(slot))
+				{
+					found = true;
+					continue;
+				}
+				for (int other = first[slot]; other != -1; other = next[other])
+				{
+					if (dist[other] == UNREACHED)
+					{
+						dist[other] = dist[item] + 1;
+						queue[tail++] = other;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Depth-first search for an augmenting path from an item along the layers, shifting every item on the path over
+	 * to its next slot if one is found. The path is held in an explicit stack, with each item on it recording which
+	 * slot and which of that slot's items it has got to, so the depth of the path is limited only by the size of
+	 * those arrays, not by the thread's stack.
+	 *
+	 * @param root The id of the item to find a slot for.
+	 * @return True if the item now has a slot.
+	 */
+	private boolean extend(int root)
+	{
+		int top = -1;
+		int item = root;
+
+		while (true)
+		{
+			int open = openSlot(item);
+			if (open != -1)
+			{
+				// Shift every item on the path over, from the end of the path back to the root
+				match(item, open);
+				for (; top >= 0; top--)
+				{
+					match(path[top], scanSlot[path[top]]);
+				}
+				return true;
+			}
+
+			path[++top] = item;
+			scanSlot[item] = Bits.nextSetBit(domainOf[item], 0);
+			scanOther[item] = scanSlot[item] == -1 ? -1 : first[scanSlot[item]];
+
+			item = -1;
+			while (top >= 0)
+			{
+				item = nextOnPath(path[top]);
+				if (item != -1) break;
+
+				// No path through this item in this phase
+				dist[path[top--]] = UNREACHED;
+			}
+			if (item == -1) return false;
+		}
+	}
+
+	/**
+	 * Finds a slot in an item's domain, other than the one it is matched to, with room to spare.
+	 *
+	 * @param item The id of the item.
+	 * @return The slot id, or -1 if there is none.
+	 */
+	private int openSlot(int item)
+	{
+		long[] domain = domainOf[item];
+		int current = matchOf[item];
+
+		for (int slot = Bits.nextSetBit(domain, 0); slot != -1; slot = Bits.nextSetBit(domain, slot + 1))
+		{
+			if (slot != current && load[slot] < room(slot)) return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves an item on the path on to the next item, in the next layer, matched to one of its slots.
+	 *
+	 * @param item The id of the item on the path.
+	 * @return The id of the next item to try, or -1 if every one has been tried.
+	 */
+	private int nextOnPath(int item)
+	{
+		long[] domain = domainOf[item];
+		int current = matchOf[item];
+		int slot = scanSlot[item];
+		int other = scanOther[item];
+
+		while (slot != -1)
+		{
+			if (slot != current)
+			{
+				for (; other != -1; other = next[other])
+				{
+					if (dist[other] == dist[item] + 1)
+					{
+						scanSlot[item] = slot;
+						scanOther[item] = next[other];
+						return other;
+					}
+				}
+			}
+			slot = Bits.nextSetBit(domain, slot + 1);
+			other = slot == -1 ? -1 : first[slot];
+		}
+
+		scanSlot[item] = -1;
+		return -1;
+	}
+
+	private int room(int slot)
+	{
+		return Math.max(0, assigned.getSlotMax(slot) - assigned.getNumAssigned(slot));
+	}
+
+	private void match(int item, int slot)
+	{
+		if (matchOf[item] != -1) unmatch(item);
+
+		matchOf[item] = slot;
+		load[slot]++;
+		prev[item] = -1;
+		next[item] = first[slot];
+		if (first[slot] != -1) prev[first[slot]] = item;
+		first[slot] = item;
+	}
+
+	private void unmatch(int item)
+	{
+		int slot = matchOf[item];
+		matchOf[item] = -1;
+		load[slot]--;
+		if (prev[item] != -1) next[prev[item]] = next[item];
+		else first[slot] = next[item];
+		if (next[item] != -1) prev[next[item]] = prev[item];
+	}
+}
@@ -21,6 +21,14 @@ public class TimeSlot {
 
     private TimePair timePair;
 
+    // Dense index of this slot within its TimeTable. Assigned when the TimeTable is indexed; -1 until then.
+    private int id = -1;
+
+    // Bitsets over slot ids, filled in by TimeTable.index(): every slot that overlaps this one in time, and every
+    // slot that shares a day with it. Null until the table is indexed.
+    private long[] overlapMask;
+    private long[] dayMask;
+
     /**
      * Constructor to build a TimeSlot from a partially-parsed input string.
      *
@@ -76,6 +84,21 @@ public class TimeSlot {
      */
     public int getMax() { return this.max; }
 
+    /**
+     * Gets the dense integer id of this slot, as assigned by TimeTable.index(). Lecture slots always come before lab
+     * slots, so the ids for one type of slot form a contiguous range.
+     *
+     * @return The id of this slot, or -1 if the owning TimeTable has not been indexed yet.
+     */
+    public int getId() { return this.id; }
+
+    /**
+     * Gets the start time of this slot as a whole number of half hours since midnight (e.g. 9:30 is 19).
+     *
+     * @return The start time of this slot, in half hours.
+     */
+    public int getStartHalfHours() { return (int) Math.round(timePair.getTime() * 2); }
+
     /**
      * Returns the duration of the slot, in hours. Value depends on the type of slot.
      *
@@ -91,6 +114,33 @@ public class TimeSlot {
         return rv;
     }
 
+    /**
+     * Sets the dense id of this slot. Only the TimeTable should call this, when it indexes its slots.
+     *
+     * @param id The new id of this slot.
+     */
+    void setId(int id) { this.id = id; }
+
+    /**
+     * Sets the precomputed overlap bitsets for this slot. Only the TimeTable should call this, when it indexes its
+     * slots.
+     *
+     * @param overlapMask Bitset of the ids of all slots that overlap this one.
+     * @param dayMask Bitset of the ids of all slots that share a day with this one.
+     */
+    void setOverlapMasks(long[] overlapMask, long[] dayMask) {
+        this.overlapMask = overlapMask;
+        this.dayMask = dayMask;
+    }
+
+    /**
+     * Gets the bitset of ids of all slots (lecture and lab) that overlap this one, including this slot itself.
+     * The returned array is shared and must not be modified.
+     *
+     * @return The overlap bitset, or null if the owning TimeTable has not been indexed.
+     */
+    public long[] getOverlapMask() { return overlapMask; }
+
     // -------------- Predicates --------------
 
     /**
@@ -125,6 +175,18 @@ public class TimeSlot {
      * @return True if both TimeSlots can occur on the same day, or false otherwise.
      */
     public boolean overlapsDay(TimeSlot other) {
+        if (dayMask != null && other.id >= 0) return Bits.get(dayMask, other.id);
+        return computeOverlapsDay(other);
+    }
+
+    /**
+     * Works out from the slot types whether two TimeSlots can occur on the same day. Used to build the day bitsets,
+     * and as a fallback for slots that have not been indexed.
+     *
+     * @param other The TimeSlot that may share a day with this one.
+     * @return True if both TimeSlots can occur on the same day, or false otherwise.
+     */
+    boolean computeOverlapsDay(TimeSlot other) {
         SlotType type = getSlotType();
         SlotType otherType = other.getSlotType();
         if (type == SlotType.MWF_LEC) {
@@ -154,20 +216,27 @@ public class TimeSlot {
      * @return True if the TimeSlots overlap; false otherwise.
      */
     public boolean overlaps(TimeSlot other) {
-        if (!(overlapsDay(other))) return false;
-        double start = timePair.getTime();
-        double otherStart = other.getTime();
-        double end = start + getLength();
-        double otherEnd = otherStart + other.getLength();
-
-        // Find which one starts earlier and iterate until we've run past either's max time.
-        double lowerStart = Math.min(start, otherStart);
-        for (double i = lowerStart; ((i < end) && (i < otherEnd)); i += 0.5 ) {
-            if (i >= start && i >= otherStart)
-                return true;
-        }
+        if (overlapMask != null && other.id >= 0) return Bits.get(overlapMask, other.id);
+        return computeOverlaps(other);
+    }
 
-        return false;
+    /**
+     * Works out from the start times and lengths whether two TimeSlots overlap. Used to build the overlap bitsets,
+     * and as a fallback for slots that have not been indexed.
+     *
+     * Times are compared in whole half hours, since every start time and length is a multiple of 0.5.
+     *
+     * @param other The other TimeSlot to compare against.
+     * @return True if the TimeSlots overlap; false otherwise.
+     */
+    boolean computeOverlaps(TimeSlot other) {
+        if (!(computeOverlapsDay(other))) return false;
+        int start = getStartHalfHours();
+        int otherStart = other.getStartHalfHours();
+        int end = start + (int) Math.round(getLength() * 2);
+        int otherEnd = otherStart + (int) Math.round(other.getLength() * 2);
+
+        return (start < otherEnd) && (otherStart < end);
     }
 
     // -------------- Overrides --------------
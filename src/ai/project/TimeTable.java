@@ -16,6 +16,11 @@ import java.util.*;
  * TimeSlot, which is what we will have if no courses are assigned yet.
  *
  * This class works by organizing slots into two HashMaps, divided into Lecture and Lab slots.
+ *
+ * Once all slots have been read in, index() gives every slot a dense integer id (lecture slots first, then lab slots,
+ * each ordered by day and start time). The ids are what the ProblemModel and the search use in place of hashing.
+ * Indexing also builds the slot overlap matrix, stored as one bitset per slot, so that TimeSlot.overlaps() and
+ * overlapsDay() become a single bit test instead of walking the times.
  */
 public class TimeTable {
     private HashMap<TimePair, TimeSlot> lecSlots;
@@ -23,6 +28,9 @@ public class TimeTable {
     private int totalLecturesWithMinimum;
     private int totalLabsWithMinimum;
 
+    // Slots ordered by id, or null if the table has changed since it was last indexed.
+    private TimeSlot[] indexedSlots;
+
     public TimeTable() {
         lecSlots = new HashMap<>();
         labSlots = new HashMap<>();
@@ -38,6 +46,7 @@ public class TimeTable {
      */
     public void updateTable(TimeSlot slot) 
     {
+        indexedSlots = null;
         if (slot.isLectureSlot()) {
             TimeSlot oldSlot = lecSlots.get(slot.getTimePair());
             if (oldSlot != null) {
@@ -147,6 +156,73 @@ public class TimeTable {
         return new ArrayList<>(lecSlots.values());
     }
 
+    /**
+     * Assigns every TimeSlot in the table a dense id and returns the slots ordered by that id. Lecture slots get ids
+     * [0, getNumLectureSlots()), and lab slots get the ids after that. Within each type, slots are ordered by
+     * SlotType and then start time, so the ids are stable for a given input.
+     *
+     * This also builds the overlap and same-day bitsets for every slot (see TimeSlot.getOverlapMask()).
+     *
+     * The result is cached until the table is next updated. The returned array is shared and must not be modified.
+     *
+     * @return All TimeSlots in the table, indexed by id.
+     */
+    public TimeSlot[] index() {
+        if (indexedSlots != null) return indexedSlots;
+
+        Comparator<TimeSlot> order = Comparator.comparing(TimeSlot::getSlotType).thenComparingDouble(TimeSlot::getTime);
+        ArrayList<TimeSlot> lectures = getAllLectureSlots();
+        ArrayList<TimeSlot> labs = getAllLabSlots();
+        lectures.sort(order);
+        labs.sort(order);
+
+        TimeSlot[] slots = new TimeSlot[lectures.size() + labs.size()];
+        int id = 0;
+        for (TimeSlot slot : lectures) {
+            slot.setId(id);
+            slots[id++] = slot;
+        }
+        for (TimeSlot slot : labs) {
+            slot.setId(id);
+            slots[id++] = slot;
+        }
+
+        // Overlap matrix. Both relations are symmetric, so fill in both halves from one comparison.
+        long[][] overlap = new long[slots.length][];
+        long[][] sameDay = new long[slots.length][];
+        for (int i = 0; i < slots.length; i++) {
+            overlap[i] = Bits.create(slots.length);
+            sameDay[i] = Bits.create(slots.length);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            for (int j = i; j < slots.length; j++) {
+                if (slots[i].computeOverlapsDay(slots[j])) {
+                    Bits.set(sameDay[i], j);
+                    Bits.set(sameDay[j], i);
+                }
+                if (slots[i].computeOverlaps(slots[j])) {
+                    Bits.set(overlap[i], j);
+                    Bits.set(overlap[j], i);
+                }
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            slots[i].setOverlapMasks(overlap[i], sameDay[i]);
+        }
+
+        indexedSlots = slots;
+        return slots;
+    }
+
+    /**
+     * Gets the number of lecture slots in the table. Lab slot ids start at this value.
+     *
+     * @return The number of lecture slots in the table.
+     */
+    public int getNumLectureSlots() {
+        return lecSlots.size();
+    }
+
     /**
      * Computes the total number of lecture slots in the TimeTable that have a minimum value.
      * Used to establish a baseline penalty for a fresh set of Assignments (i.e. what is the eval score if
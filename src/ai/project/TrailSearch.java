@@ -0,0 +1,758 @@
+package ai.project;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * TrailSearch class
+ *
+ * The in-place version of the Or-Tree search. Where OTree builds a fresh Assignments (and a fresh OTree) for every
+ * viable slot of every node, this works on one Assignments the whole way down: a node assigns an item, explores, and
+ * on backtrack calls Assignments.undoTo() to take the assignment back off the undo trail.
+ *
+ * The unassigned items live in one int[]; picking an item swaps it to the end and shrinks the live range, and
+ * backtracking grows the range again. Viable slots for each depth go into a buffer that is allocated once and reused,
+ * so the search itself does not allocate.
+ *
+ * The depth-first search is driven by a loop over an explicit stack of frames rather than by recursion, so it can go
+ * as deep as there are items without needing a large thread stack.
+ *
+ * Explores the same tree as OTree: the next item is picked by the VariableOrdering set in SearchOptions, and its
+ * viable slots are tried in the order given by the ValueOrdering set there.
+ *
+ * With forward checking on (see SearchOptions), the live domain of every unassigned item is kept in a Domains object
+ * and narrowed after each assignment. A child is skipped as soon as its assignment leaves some other item with nowhere
+ * to go, rather than when the search finally reaches that item.
+ *
+ * With backjumping on as well, every frame keeps a conflict set: the assigned items that are to blame for its slots
+ * failing, taken from the culprits Domains records when a domain is emptied. When a frame runs out of slots, the
+ * search jumps straight back to the deepest frame in its conflict set, skipping every frame in between (none of them
+ * could fix the problem), and that frame inherits the conflict set. If there is no frame to jump back to, the problem
+ * has no solution. Each such conflict, with the slots its items were in, is also a nogood, and is kept in a
+ * NogoodStore so that the same combination is cut off straight away if the search comes across it again.
+ *
+ * search() stops at the first complete schedule. optimize() instead runs a branch-and-bound search for the schedule
+ * with the lowest eval score: it keeps the best schedule found so far, and backs out of any partial Assignments whose
+ * EvalBound is no better than it. As that is not a conflict between assignments, a bound cut (or a complete schedule)
+ * blames every frame on the stack, so the search backs up one frame at a time from there.
+ *
+ * Whenever a frame runs out of slots, the state it started from has been searched in full, so its Zobrist hash is
+ * stored in the Department's TranspositionTable: as a dead end, or, under branch-and-bound, with the best score at the
+ * time as a bound. If the search reaches the same set of assignments again by another path (or in another search, such
+ * as a later SetSearch repair), it backs out straight away. This needs the search to be assigning every item, as what
+ * the table holds is only true of complete schedules.
+ *
+ * With restarts on (see SearchOptions), search() gives each run a budget of failures (assignments that had to be
+ * taken back), growing by the Luby sequence: 1, 1, 2, 1, 1, 2, 4, 1, ... times the restart base. A run that uses up
+ * its budget is abandoned and the search starts again with a new seed, so one unlucky early choice cannot keep it
+ * stuck in a huge barren subtree. The budget keeps growing, so some run is always allowed to finish, and the search
+ * is still complete. Learned nogoods and the transposition table carry over from run to run. If asked to, so does a
+ * weight per item, bumped each time the item fails, which the VariableOrdering uses to try the items that keep
+ * failing earlier.
+ *
+ * optimizeByDiscrepancy() is a limited discrepancy search (LDS) version of optimize(). Taking anything but the
+ * ValueOrdering's first choice of slot is a discrepancy: the second choice costs one, the third two, and so on, where
+ * slots that were cut off straight away (by forward checking, a nogood or the bound) do not count as choices. Each
+ * pass allows one more discrepancy on a path than the last, so schedules are tried in order of how far they stray
+ * from the heuristic, rather than plain depth-first search spending its time deep under the first few choices. A
+ * frame cut short by the limit has not been searched in full, so it is not stored in the transposition table and
+ * does not backjump; its parent backs up chronologically instead.
+ *
+ * With the matching check on (see SearchOptions), every node also keeps a SlotMatching of the unassigned items to the
+ * slots with room left, and backs out as soon as they cannot all be matched at once. As that is a conflict over slot
+ * capacity rather than between particular assignments, it blames every frame on the stack, like a bound cut. The
+ * matched slot of an item can also be tried first, ahead of the ValueOrdering's choice.
+ */
+public class TrailSearch
+{
+	private final Department department;
+	private final ProblemModel model;
+	private final Assignments assigned;
+	private VariableOrdering ordering;
+	private ValueOrdering valueOrdering;
+
+	// Live domains, or null if forward checking is off
+	private final Domains domains;
+
+	// Conflict sets (bitsets over item ids), one per depth, and the depth each item is assigned at (-1 if it is not
+	// on the stack); null if backjumping is off
+	private final long[][] conflicts;
+	private final int[] itemDepth;
+
+	// Learned nogoods, or null if they are not being kept
+	private final NogoodStore nogoods;
+	private final int[] nogoodItems;
+	private final int[] nogoodSlots;
+
+	// Matching of the unassigned items to slots, or null if it is not being kept, and whether to try each item's
+	// matched slot first
+	private final SlotMatching matching;
+	private final boolean matchingHint;
+
+	// States already searched in full, or null if the table is off
+	private final TranspositionTable transpositions;
+
+	// True if the search is assigning every item that is not already assigned, rather than a sub-problem
+	private final boolean wholeProblem;
+
+	// Restart state: failures so far in this run and the most allowed (-1 for no limit), whether the last run was
+	// abandoned for going over it, and the failure count of each item (null unless it is being learned)
+	private long failures;
+	private long failLimit = -1;
+	private boolean outOfBudget;
+	private int[] weights;
+	private int restarts;
+
+	// Branch-and-bound state. bound is null unless optimize() is running.
+	private EvalBound bound;
+	private int[] startItems;
+	private int[] bestSlots;
+	private int bestScore = Integer.MAX_VALUE;
+	private int rootBound;
+	private long deadline;
+	private boolean stopped;
+
+	private final int[] unassigned;
+	private int numUnassigned;
+
+	// The search stack, one frame per depth: where the item was picked from in unassigned, the item, how many viable
+	// slots it has and the next one to try, and the trail marks to undo to when backing out of its assignment
+	private final int[] framePick;
+	private final int[] frameItem;
+	private final int[] frameCount;
+	private final int[] frameNext;
+	private final int[] frameMark;
+	private final int[] frameDomainMark;
+
+	// Limited discrepancy search: the most discrepancies allowed on a path (-1 for no limit), the discrepancies
+	// already used above each frame, how many of each frame's slots have been explored below, whether each frame has
+	// been cut short by the limit (itself or below), and whether anything has been cut short in this pass
+	private int discrepancyLimit = -1;
+	private final int[] frameDiscrepancy;
+	private final int[] frameExplored;
+	private final boolean[] frameTruncated;
+	private boolean truncated;
+
+	// Viable slot buffers, one per depth, allocated the first time that depth is reached
+	private final int[][] candidates;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param department The Department being scheduled.
+	 * @param assigned   The Assignments to search from. This is mutated in place; on success it holds the solution,
+	 *                   and on failure it is returned to the state it was in.
+	 * @param unassigned The items still to assign.
+	 * @param rand       Random source for tie-breaking and slot ordering.
+	 */
+	public TrailSearch(Department department, Assignments assigned, Iterable<SlotItem> unassigned, Random rand)
+	{
+		this.department = department;
+		this.model = assigned.getModel();
+		this.assigned = assigned;
+		this.ordering = new VariableOrdering(model, SearchOptions.getInstance().getVariableOrder(), rand);
+		this.valueOrdering = new ValueOrdering(model, SearchOptions.getInstance().getValueOrder(), rand);
+
+		this.unassigned = new int[model.getNumItems()];
+		for (SlotItem item : unassigned)
+		{
+			if (assigned.getSlotId(item.getId()) == -1) this.unassigned[numUnassigned++] = item.getId();
+		}
+
+		int numFree = 0;
+		for (int item = 0; item < model.getNumItems(); item++)
+		{
+			if (assigned.getSlotId(item) == -1) numFree++;
+		}
+		wholeProblem = (numFree == numUnassigned);
+		transpositions = wholeProblem ? department.getTranspositionTable() : null;
+
+		candidates = new int[numUnassigned + 1][];
+		framePick = new int[numUnassigned + 1];
+		frameItem = new int[numUnassigned + 1];
+		frameCount = new int[numUnassigned + 1];
+		frameNext = new int[numUnassigned + 1];
+		frameMark = new int[numUnassigned + 1];
+		frameDomainMark = new int[numUnassigned + 1];
+		frameDiscrepancy = new int[numUnassigned + 1];
+		frameExplored = new int[numUnassigned + 1];
+		frameTruncated = new boolean[numUnassigned + 1];
+
+		SearchOptions options = SearchOptions.getInstance();
+		boolean backjump = options.isForwardChecking() && options.isBackjumping();
+
+		// A search over only some of the unassigned items keeps domains for just those; the others are someone else's
+		// to place, and must not wipe out this search (see Domains)
+		if (!options.isForwardChecking()) domains = null;
+		else if (wholeProblem) domains = new Domains(assigned, backjump);
+		else domains = new Domains(assigned, backjump, this.unassigned, numUnassigned);
+
+		if (backjump)
+		{
+			conflicts = new long[numUnassigned + 1][];
+			itemDepth = new int[model.getNumItems()];
+			Arrays.fill(itemDepth, -1);
+		}
+		else
+		{
+			conflicts = null;
+			itemDepth = null;
+		}
+
+		matching = options.isMatchingCheck() ? new SlotMatching(assigned) : null;
+		matchingHint = (matching != null) && options.isMatchingHint();
+
+		if (backjump && options.getNogoodCapacity() > 0)
+		{
+			nogoods = new NogoodStore(model, options.getNogoodCapacity(), options.getNogoodMaxLength());
+			nogoodItems = new int[model.getNumItems()];
+			nogoodSlots = new int[model.getNumItems()];
+		}
+		else
+		{
+			nogoods = null;
+			nogoodItems = null;
+			nogoodSlots = null;
+		}
+	}
+
+	/**
+	 * Runs the depth-first search.
+	 *
+	 * @return True if every item was assigned, false if the tree was exhausted or the thread was interrupted.
+	 */
+	public boolean search()
+	{
+		// An item with an empty static domain can never be placed, so the whole tree is a dead end
+		for (int i = 0; i < numUnassigned; i++)
+		{
+			if (Bits.nextSetBit(model.itemDomain[unassigned[i]], 0) == -1) return false;
+		}
+		if (domains != null && domains.hasWipeout()) return false;
+		if (matching != null && !matching.update(unassigned, numUnassigned, domains)) return false;
+		if (transpositions != null && numUnassigned > 0 && transpositions.probe(assigned.getHash()) >= bestScore)
+			return false;
+
+		if (bound != null || failLimit >= 0 || !SearchOptions.getInstance().isRestarts()) return run();
+		return runWithRestarts();
+	}
+
+	/**
+	 * Gives search() a budget of failures (assignments that had to be taken back), after which it gives up. The
+	 * search is then run once, without restarts.
+	 *
+	 * @param limit The most failures allowed; -1 for no limit.
+	 */
+	public void setFailureLimit(long limit)
+	{
+		failLimit = limit;
+	}
+
+	/**
+	 * Runs the search over and over, each time with a bigger failure budget and a new seed, until a run either finds
+	 * a solution or finishes within its budget.
+	 *
+	 * @return True if every item was assigned, false if the tree was exhausted or the thread was interrupted.
+	 */
+	private boolean runWithRestarts()
+	{
+		SearchOptions options = SearchOptions.getInstance();
+		if (options.isRestartKeepWeights())
+		{
+			weights = new int[model.getNumItems()];
+			ordering.setWeights(weights);
+		}
+
+		for (int i = 1; ; i++)
+		{
+			failLimit = options.getRestartBase() * luby(i);
+			failures = 0;
+			outOfBudget = false;
+
+			if (run()) return true;
+			if (!outOfBudget) return false;
+
+			Random random = options.newRandom();
+			ordering = new VariableOrdering(model, options.getVariableOrder(), random);
+			ordering.setWeights(weights);
+			valueOrdering = new ValueOrdering(model, options.getValueOrder(), random);
+			restarts++;
+		}
+	}
+
+	/**
+	 * Gets the number of times search() has started over (see runWithRestarts()).
+	 *
+	 * @return The number of restarts so far.
+	 */
+	public int getRestarts()
+	{
+		return restarts;
+	}
+
+	/**
+	 * The Luby sequence: 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+	 *
+	 * @param i The position in the sequence, from 1.
+	 * @return The i-th term.
+	 */
+	static long luby(long i)
+	{
+		while (true)
+		{
+			int k = 64 - Long.numberOfLeadingZeros(i);
+			if (i == (1L << k) - 1) return 1L << (k - 1);
+
+			// Within the repeat of the sequence before the next power of two
+			i -= (1L << (k - 1)) - 1;
+		}
+	}
+
+	/**
+	 * The search loop. Each depth of the tree has a frame, held in the frame arrays, recording which item it assigns,
+	 * which of its slots it has got to, and where the undo trails were when it started. Moving down pushes a frame and
+	 * moving back up pops one, so the depth of the search is limited only by the size of those arrays (one entry per
+	 * unassigned item), not by the thread's stack.
+	 *
+	 * @return True if every item was assigned, false if the tree was exhausted or the thread was interrupted.
+	 */
+	private boolean run()
+	{
+		if (numUnassigned == 0) return true;
+
+		int depth = 0;
+		openFrame(depth);
+
+		while (depth >= 0)
+		{
+			outOfBudget = (failLimit >= 0 && failures >= failLimit);
+			if (outOfBudget || Thread.currentThread().isInterrupted()
+					|| (bound != null && deadline > 0 && System.currentTimeMillis() > deadline))
+			{
+				// Leave the Assignments the way they were found
+				stopped = !outOfBudget;
+				for (; depth >= 0; depth--)
+				{
+					undoFrame(depth);
+					closeFrame(depth);
+				}
+				return false;
+			}
+
+			if (discrepancyLimit >= 0 && frameNext[depth] < frameCount[depth]
+					&& frameDiscrepancy[depth] + frameExplored[depth] > discrepancyLimit)
+			{
+				// The rest of the slots cost too many discrepancies for this pass
+				frameTruncated[depth] = true;
+				truncated = true;
+				frameNext[depth] = frameCount[depth];
+			}
+
+			if (frameNext[depth] == frameCount[depth] && frameTruncated[depth])
+			{
+				// Not every slot was tried, so this proves nothing; just back up
+				closeFrame(depth);
+				if (--depth >= 0)
+				{
+					undoFrame(depth);
+					frameTruncated[depth] = true;
+				}
+				continue;
+			}
+
+			if (frameNext[depth] == frameCount[depth])
+			{
+				// Every slot has failed, so nothing better can be reached from here
+				countFailure(frameItem[depth]);
+				if (transpositions != null) transpositions.store(assigned.getHash(), bestScore, numUnassigned + 1);
+
+				// Put the item back and take the parent's assignment off
+				if (conflicts != null)
+				{
+					depth = backjump(depth);
+					continue;
+				}
+
+				closeFrame(depth);
+				if (--depth >= 0) undoFrame(depth);
+				continue;
+			}
+
+			int item = frameItem[depth];
+			int slot = candidates[depth][frameNext[depth]++];
+
+			assigned.addAssignment(slot, item);
+			if (domains != null && !domains.assign(item, slot))
+			{
+				countFailure(domains.getWipedOut());
+				if (conflicts != null) Bits.or(conflicts[depth], domains.getCulprits(domains.getWipedOut()));
+				undoFrame(depth);
+				continue;
+			}
+
+			if (nogoods != null)
+			{
+				int nogood = nogoods.check(item, slot, assigned);
+				if (nogood != -1)
+				{
+					failures++;
+					int count = nogoods.getItems(nogood, nogoodItems);
+					for (int i = 0; i < count; i++)
+					{
+						Bits.set(conflicts[depth], nogoodItems[i]);
+					}
+					undoFrame(depth);
+					continue;
+				}
+			}
+
+			if (transpositions != null && numUnassigned > 0 && transpositions.probe(assigned.getHash()) >= bestScore)
+			{
+				// Already searched in full by another path
+				failures++;
+				blameAll(depth);
+				undoFrame(depth);
+				continue;
+			}
+
+			if (matching != null && !matching.update(unassigned, numUnassigned, domains))
+			{
+				// The items left cannot all have a slot at the same time
+				failures++;
+				blameAll(depth);
+				undoFrame(depth);
+				continue;
+			}
+
+			if (bound != null)
+			{
+				// A complete schedule is recorded, and then treated the same as one that cannot beat the best
+				if (numUnassigned == 0) recordBest();
+
+				if (numUnassigned == 0 || bound.compute(assigned, domains, unassigned, numUnassigned) >= bestScore)
+				{
+					blameAll(depth);
+					undoFrame(depth);
+					continue;
+				}
+			}
+
+			if (numUnassigned == 0) return true;
+			frameExplored[depth]++;
+			openFrame(++depth);
+		}
+
+		// The starting state is now searched in full as well
+		if (transpositions != null && !truncated) transpositions.store(assigned.getHash(), bestScore, numUnassigned);
+		return false;
+	}
+
+	/**
+	 * Runs a branch-and-bound search for the schedule with the lowest eval score. The search runs until the whole
+	 * tree has been searched, which proves the best schedule found is optimal, or until the time limit is reached or
+	 * the thread is interrupted.
+	 *
+	 * @param timeLimit The most time to spend, in milliseconds; 0 or less for no limit.
+	 * @return True if any complete schedule was found, in which case the Assignments now hold the best one. False if
+	 * there is none, or none was found before the search was stopped.
+	 */
+	public boolean optimize(long timeLimit)
+	{
+		if (startOptimizing(timeLimit)) return true;
+
+		search();
+		return finishOptimizing();
+	}
+
+	/**
+	 * Runs the same branch-and-bound search as optimize(), as a limited discrepancy search: a pass with no
+	 * discrepancies, then one allowing one, then two, and so on. Each pass keeps the best schedule and the pruning of
+	 * the passes before it. Stops once a pass is not cut short anywhere by its limit, which means it searched the
+	 * whole tree, or when the time limit is reached or the thread is interrupted.
+	 *
+	 * @param timeLimit The most time to spend, in milliseconds; 0 or less for no limit.
+	 * @return True if any complete schedule was found, in which case the Assignments now hold the best one. False if
+	 * there is none, or none was found before the search was stopped.
+	 */
+	public boolean optimizeByDiscrepancy(long timeLimit)
+	{
+		if (startOptimizing(timeLimit)) return true;
+
+		for (discrepancyLimit = 0; ; discrepancyLimit++)
+		{
+			truncated = false;
+			search();
+			if (stopped || !truncated) break;
+		}
+		discrepancyLimit = -1;
+
+		return finishOptimizing();
+	}
+
+	/**
+	 * Sets up the branch-and-bound state for optimize() and optimizeByDiscrepancy().
+	 *
+	 * @param timeLimit The most time to spend, in milliseconds; 0 or less for no limit.
+	 * @return True if there is nothing to search, as every item is already assigned.
+	 */
+	private boolean startOptimizing(long timeLimit)
+	{
+		bound = new EvalBound(model);
+		startItems = Arrays.copyOf(unassigned, numUnassigned);
+		bestSlots = new int[model.getNumItems()];
+		rootBound = bound.compute(assigned, domains, unassigned, numUnassigned);
+		deadline = (timeLimit > 0) ? System.currentTimeMillis() + timeLimit : 0;
+
+		if (numUnassigned > 0) return false;
+
+		bestScore = assigned.getEvalScore();
+		return true;
+	}
+
+	/**
+	 * Puts the best schedule found back into the Assignments.
+	 *
+	 * @return True if any complete schedule was found.
+	 */
+	private boolean finishOptimizing()
+	{
+		if (bestScore == Integer.MAX_VALUE) return false;
+
+		// The search always backs out of every schedule it finds, so put the best one back
+		for (int item : startItems)
+		{
+			assigned.addAssignment(bestSlots[item], item);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The eval score of the best schedule optimize() found, or Integer.MAX_VALUE if it found none.
+	 */
+	public int getBestScore()
+	{
+		return bestScore;
+	}
+
+	/**
+	 * Gets the best lower bound optimize() established on the eval score of any schedule. If the search finished,
+	 * this is the best score itself; otherwise it is the bound computed before the search started.
+	 *
+	 * @return A lower bound on the optimal eval score.
+	 */
+	public int getLowerBound()
+	{
+		return isProvenOptimal() ? bestScore : rootBound;
+	}
+
+	/**
+	 * Predicate: did optimize() search the whole tree, so that its best schedule is known to be optimal (or known not
+	 * to exist)?
+	 *
+	 * @return True if the search finished without being stopped.
+	 */
+	public boolean isProvenOptimal()
+	{
+		return bound != null && !stopped;
+	}
+
+	/**
+	 * Records the current (complete) Assignments as the best schedule, if it beats the best so far.
+	 */
+	private void recordBest()
+	{
+		int score = assigned.getEvalScore();
+		if (score >= bestScore) return;
+
+		bestScore = score;
+		for (int item : startItems)
+		{
+			bestSlots[item] = assigned.getSlotId(item);
+		}
+		System.out.println("New best eval: " + bestScore);
+	}
+
+	/**
+	 * Counts a failure towards the run's budget, and bumps the weight of the item to blame.
+	 *
+	 * @param item The id of the item that ran out of slots.
+	 */
+	private void countFailure(int item)
+	{
+		failures++;
+		if (weights != null) weights[item]++;
+	}
+
+	/**
+	 * Blames a failure at a depth on every frame on the stack, so that backjumping backs up just one frame.
+	 *
+	 * @param depth The depth of the frame whose assignment failed.
+	 */
+	private void blameAll(int depth)
+	{
+		if (conflicts == null) return;
+
+		for (int d = 0; d <= depth; d++)
+		{
+			Bits.set(conflicts[depth], frameItem[d]);
+		}
+	}
+
+	/**
+	 * Pushes the frame for a depth: picks the item to assign there and fills in its viable slots, in the order to try
+	 * them.
+	 *
+	 * @param depth The depth of the new frame.
+	 */
+	private void openFrame(int depth)
+	{
+		// Pull an item
+		int pick = ordering.select(unassigned, numUnassigned, assigned, domains);
+		int item = unassigned[pick];
+		unassigned[pick] = unassigned[--numUnassigned];
+		unassigned[numUnassigned] = item;
+
+		// Get its viable slots, in the order to try them
+		if (candidates[depth] == null) candidates[depth] = new int[model.getNumSlots()];
+		int[] slots = candidates[depth];
+		int numSlots = (domains != null) ? toIds(domains.get(item), slots) : assigned.getViableSlotIds(item, slots);
+		valueOrdering.order(item, slots, numSlots, assigned, domains);
+		if (matchingHint) moveToFront(slots, numSlots, matching.getMatch(item));
+
+		if (numSlots == 0 && wholeProblem) OTree.reportDeadEnd(department, assigned, numUnassigned);
+
+		framePick[depth] = pick;
+		frameItem[depth] = item;
+		if (conflicts != null)
+		{
+			if (conflicts[depth] == null) conflicts[depth] = Bits.create(model.getNumItems());
+			Arrays.fill(conflicts[depth], 0);
+			itemDepth[item] = depth;
+		}
+		frameCount[depth] = numSlots;
+		frameNext[depth] = 0;
+		frameDiscrepancy[depth] = (depth == 0) ? 0 : frameDiscrepancy[depth - 1] + frameExplored[depth - 1] - 1;
+		frameExplored[depth] = 0;
+		frameTruncated[depth] = false;
+		frameMark[depth] = assigned.getTrailMark();
+		frameDomainMark[depth] = (domains != null) ? domains.getTrailMark() : 0;
+	}
+
+	/**
+	 * Takes back the assignment made by a frame, along with any domain narrowing it caused.
+	 *
+	 * @param depth The depth of the frame.
+	 */
+	private void undoFrame(int depth)
+	{
+		assigned.undoTo(frameMark[depth]);
+		if (domains != null) domains.undoTo(frameDomainMark[depth]);
+	}
+
+	/**
+	 * Pops the frame for a depth, putting its item back where it was picked from.
+	 *
+	 * @param depth The depth of the frame.
+	 */
+	private void closeFrame(int depth)
+	{
+		int pick = framePick[depth];
+		unassigned[numUnassigned] = unassigned[pick];
+		unassigned[pick] = frameItem[depth];
+		numUnassigned++;
+		if (itemDepth != null) itemDepth[frameItem[depth]] = -1;
+	}
+
+	/**
+	 * Backs out of a frame that has run out of slots, jumping back to the deepest frame to blame.
+	 * <p>
+	 * The frame's conflict set is everything that made its slots fail, plus the culprits of whatever was missing from
+	 * its domain to begin with. Every frame deeper than the deepest of those is popped without trying its remaining
+	 * slots, and that frame's own assignment is taken back so it can try its next slot. Items that were assigned
+	 * before the search began (partial assignments) are never to blame, as they cannot be changed.
+	 *
+	 * @param depth The depth of the frame that has run out of slots.
+	 * @return The depth of the frame to carry on from, or -1 if no frame can be blamed, so there is no solution.
+	 */
+	private int backjump(int depth)
+	{
+		int item = frameItem[depth];
+		long[] conflict = conflicts[depth];
+		Bits.or(conflict, domains.getCulprits(item));
+		Bits.clear(conflict, item);
+
+		// Find the deepest culprit, and note the conflict as a nogood
+		int target = -1;
+		int count = 0;
+		for (int other = Bits.nextSetBit(conflict, 0); other != -1; other = Bits.nextSetBit(conflict, other + 1))
+		{
+			if (itemDepth[other] == -1) continue;
+
+			target = Math.max(target, itemDepth[other]);
+			if (nogoods != null)
+			{
+				nogoodItems[count] = other;
+				nogoodSlots[count++] = assigned.getSlotId(other);
+			}
+		}
+		if (nogoods != null) nogoods.add(nogoodItems, nogoodSlots, count);
+
+		for (int d = depth; d > target; d--)
+		{
+			closeFrame(d);
+		}
+
+		if (target >= 0)
+		{
+			undoFrame(target);
+			Bits.or(conflicts[target], conflict);
+			Bits.clear(conflicts[target], frameItem[target]);
+		}
+		else
+		{
+			// Nothing on the stack is to blame, so take everything back to where the search started. That holds for the
+			// whole tree, whatever a limited discrepancy pass may have cut short.
+			assigned.undoTo(frameMark[0]);
+			domains.undoTo(frameDomainMark[0]);
+			truncated = false;
+		}
+
+		return target;
+	}
+
+	/**
+	 * Moves a slot to the front of a list of slots, keeping the others in the same order.
+	 *
+	 * @param slots The list to reorder.
+	 * @param count The number of slots in the list.
+	 * @param slot  The slot to move; nothing happens if it is not in the list.
+	 */
+	private static void moveToFront(int[] slots, int count, int slot)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (slots[i] != slot) continue;
+
+			System.arraycopy(slots, 0, slots, 1, i);
+			slots[0] = slot;
+			return;
+		}
+	}
+
+	/**
+	 * Writes the ids of the set bits of a slot bitset into a buffer, in order.
+	 *
+	 * @param bits The bitset to read.
+	 * @param out  Buffer to fill.
+	 * @return The number of ids written.
+	 */
+	private static int toIds(long[] bits, int[] out)
+	{
+		int count = 0;
+		for (int slot = Bits.nextSetBit(bits, 0); slot != -1; slot = Bits.nextSetBit(bits, slot + 1))
+		{
+			out[count++] = slot;
+		}
+		return count;
+	}
+}
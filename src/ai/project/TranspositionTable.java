@@ -0,0 +1,98 @@
+package ai.project;
+
+/**
+ * TranspositionTable class
+ *
+ * A fixed-size table of search states that are already known not to lead anywhere better, keyed by the Zobrist hash
+ * of their Assignments (see Assignments.getHash()). Items are picked in a different order on every path, so the same
+ * set of assignments is often reached more than once; once it has been searched in full, later visits can be cut off
+ * straight away.
+ *
+ * Each entry holds a bound: every complete schedule that can be reached from the state has an eval score of at least
+ * that much. A state with no complete schedule at all (a dead end) is stored with a bound of Integer.MAX_VALUE. The
+ * table only ever holds facts about the problem itself, so the same table can be shared by every search on a
+ * Department, as long as each of them is trying to assign every item.
+ *
+ * The table is split into buckets of two entries. The first keeps the state with the most items left to assign (the
+ * most search it saves), and the second takes whatever does not replace the first. Entries are stored as (hash XOR
+ * data, data), so an entry torn by two threads writing it at once fails to match, and no locking is needed.
+ */
+public class TranspositionTable
+{
+	// Returned by probe() when there is no entry for a state
+	public static final int NONE = Integer.MIN_VALUE;
+
+	private final long[] keys;
+	private final long[] data;
+	private final int bucketMask;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param size The number of entries to hold. Rounded down to a power of two, and at least two.
+	 */
+	public TranspositionTable(int size)
+	{
+		int buckets = Math.max(1, Integer.highestOneBit(Math.max(size, 2)) / 2);
+		keys = new long[2 * buckets];
+		data = new long[2 * buckets];
+		bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Looks up a state.
+	 *
+	 * @param hash The Zobrist hash of the state's Assignments.
+	 * @return The bound stored for the state, or NONE if it is not in the table.
+	 */
+	public int probe(long hash)
+	{
+		int entry = bucket(hash);
+		for (int i = entry; i < entry + 2; i++)
+		{
+			long d = data[i];
+			if (d != 0 && (keys[i] ^ d) == hash) return (int) (d >> 32);
+		}
+		return NONE;
+	}
+
+	/**
+	 * Stores a state that has been searched in full. If the state is already in the table, it keeps the higher of the
+	 * two bounds.
+	 *
+	 * @param hash      The Zobrist hash of the state's Assignments.
+	 * @param bound     The lowest eval score any complete schedule reachable from the state could have, or
+	 *                  Integer.MAX_VALUE if there is none.
+	 * @param remaining The number of items left to assign in the state; must be at least one.
+	 */
+	public void store(long hash, int bound, int remaining)
+	{
+		int entry = bucket(hash);
+
+		for (int i = entry; i < entry + 2; i++)
+		{
+			long d = data[i];
+			if (d != 0 && (keys[i] ^ d) == hash)
+			{
+				if (bound > (int) (d >> 32)) write(i, hash, bound, remaining);
+				return;
+			}
+		}
+
+		// Depth-preferred first entry; the second is always replaced
+		if (remaining >= (int) data[entry]) write(entry, hash, bound, remaining);
+		else write(entry + 1, hash, bound, remaining);
+	}
+
+	private int bucket(long hash)
+	{
+		return 2 * (int) ((hash ^ (hash >>> 32)) & bucketMask);
+	}
+
+	private void write(int i, long hash, int bound, int remaining)
+	{
+		long d = ((long) bound << 32) | remaining;
+		data[i] = d;
+		keys[i] = hash ^ d;
+	}
+}
@@ -0,0 +1,202 @@
+package ai.project;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ValueOrdering class
+ *
+ * Decides the order in which the Or-Tree search tries the viable slots of an item. The first slot tried is the one
+ * the first solution will most likely use, so ordering them well gives a better first solution, and so better parents
+ * for the SetSearch to start from.
+ *
+ * The strategies are:
+ *  - RANDOM:        a random order. This is the original Or-Tree behaviour.
+ *  - EVAL:          lowest eval delta first, i.e. the slot that adds the least to the eval score right now.
+ *  - LCV:           least-constraining value first; the slot that takes the fewest slots away from the domains of
+ *                   the other unassigned items. Ties go to the lower eval delta.
+ *  - SLOT_PRESSURE: slots that are furthest under their min first, so minimums get filled early. Ties go to the lower
+ *                   eval delta.
+ *
+ * Whatever ties are left are broken at random, using the Random given to the constructor. The search creates that
+ * Random through SearchOptions.newRandom(), so fixing searchSeed in the config file makes the whole order repeatable.
+ */
+public class ValueOrdering
+{
+	public enum Strategy
+	{
+		RANDOM,
+		EVAL,
+		LCV,
+		SLOT_PRESSURE
+	}
+
+	private final ProblemModel model;
+	private final Strategy strategy;
+	private final Random rand;
+
+	// Sort keys, parallel to the slots being ordered, and buffers for sorting them: the keys in order, each slot packed
+	// as (rank of its key, position), and the slots in their shuffled order
+	private long[] keys;
+	private long[] sorted;
+	private long[] packed;
+	private int[] shuffled;
+
+	// Used to work out a neighbour's domain when no live Domains are kept
+	private long[] scratch;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model    The model of the problem being searched.
+	 * @param strategy How to order the slots.
+	 * @param rand     Random source for breaking ties.
+	 */
+	public ValueOrdering(ProblemModel model, Strategy strategy, Random rand)
+	{
+		this.model = model;
+		this.strategy = strategy;
+		this.rand = rand;
+	}
+
+	/**
+	 * Sorts the viable slots of an item, in place, into the order they should be tried.
+	 *
+	 * @param item     The id of the item being assigned.
+	 * @param slots    Buffer holding the ids of the item's viable slots.
+	 * @param count    The number of slot ids in the buffer.
+	 * @param assigned The current Assignments, with item not yet assigned.
+	 * @param domains  The live domains of the unassigned items, or null if they are not being kept.
+	 */
+	public void order(int item, int[] slots, int count, Assignments assigned, Domains domains)
+	{
+		// Shuffle first; the sort below is stable, so this is what breaks ties at random
+		for (int i = count - 1; i > 0; i--)
+		{
+			int j = rand.nextInt(i + 1);
+			int temp = slots[i];
+			slots[i] = slots[j];
+			slots[j] = temp;
+		}
+
+		if (strategy == Strategy.RANDOM || count < 2) return;
+
+		if (keys == null || keys.length < count)
+		{
+			int length = Math.max(count, model.getNumSlots());
+			keys = new long[length];
+			sorted = new long[length];
+			packed = new long[length];
+			shuffled = new int[length];
+		}
+		for (int i = 0; i < count; i++)
+		{
+			keys[i] = key(item, slots[i], assigned, domains);
+		}
+
+		// The keys use all 64 bits, so each is replaced by its rank among them (equal keys get equal ranks), which
+		// leaves room to pack the position alongside it. Sorting those keeps equal keys in their shuffled order.
+		System.arraycopy(keys, 0, sorted, 0, count);
+		Arrays.sort(sorted, 0, count);
+		for (int i = 0; i < count; i++)
+		{
+			long rank = Arrays.binarySearch(sorted, 0, count, keys[i]);
+			packed[i] = (rank << 32) | i;
+		}
+		Arrays.sort(packed, 0, count);
+
+		System.arraycopy(slots, 0, shuffled, 0, count);
+		for (int i = 0; i < count; i++)
+		{
+			slots[i] = shuffled[(int) packed[i]];
+		}
+	}
+
+	/**
+	 * Works out the sort key of a slot for the current strategy. Lower keys are tried first.
+	 */
+	private long key(int item, int slot, Assignments assigned, Domains domains)
+	{
+		long delta = assigned.evalDelta(slot, item);
+
+		switch (strategy)
+		{
+			case LCV:
+				return ((long) removedFromOthers(item, slot, assigned, domains) << 32) + delta;
+			case SLOT_PRESSURE:
+				long shortfall = Math.max(0, model.slotMin[slot] - assigned.getNumAssigned(slot));
+				return (-shortfall << 32) + delta;
+			default:
+				return delta;
+		}
+	}
+
+	/**
+	 * Counts how many slots assigning the item to the slot would take away from the domains of the other unassigned
+	 * items. This follows the same rules as Domains.assign().
+	 * <p>
+	 * Without live domains, the neighbours' domains are worked out from the Assignments, but the count for a slot
+	 * that would fill up uses the static domains of the items it would be taken from.
+	 *
+	 * @param item The id of the item being assigned.
+	 * @param slot The id of the slot it would be assigned to.
+	 * @return The number of (item, slot) options that would be lost.
+	 */
+	private int removedFromOthers(int item, int slot, Assignments assigned, Domains domains)
+	{
+		int removed = 0;
+
+		for (int other : model.itemIncompatible[item])
+		{
+			if (assigned.getSlotId(other) == -1 && Bits.get(domainOf(other, assigned, domains), slot)) removed++;
+		}
+
+		long[] overlap = model.slotOverlap[slot];
+		removed += overlapping(model.itemLectureLabConflicts[item], overlap, assigned, domains);
+		removed += overlapping(model.itemSpecialConflicts[item], overlap, assigned, domains);
+
+		boolean isLecture = model.isLecture(item);
+		int first = isLecture ? 0 : model.getNumLectures();
+		int end = isLecture ? model.getNumLectures() : model.getNumItems();
+		boolean fills = (assigned.getNumAssigned(slot) + 1 >= assigned.getSlotMax(slot));
+
+		if (fills || model.item500Level[item])
+		{
+			for (int other = first; other < end; other++)
+			{
+				if (other == item || assigned.getSlotId(other) != -1) continue;
+				if (!fills && !model.item500Level[other]) continue;
+
+				long[] domain = (domains != null) ? domains.get(other) : model.itemDomain[other];
+				if (Bits.get(domain, slot)) removed++;
+			}
+		}
+
+		return removed;
+	}
+
+	private int overlapping(int[] others, long[] overlap, Assignments assigned, Domains domains)
+	{
+		int removed = 0;
+		for (int other : others)
+		{
+			if (assigned.getSlotId(other) != -1) continue;
+
+			long[] domain = domainOf(other, assigned, domains);
+			for (int w = 0; w < domain.length; w++)
+			{
+				removed += Long.bitCount(domain[w] & overlap[w]);
+			}
+		}
+		return removed;
+	}
+
+	private long[] domainOf(int other, Assignments assigned, Domains domains)
+	{
+		if (domains != null) return domains.get(other);
+
+		if (scratch == null) scratch = Bits.create(model.getNumSlots());
+		assigned.getViableSlotMask(other, scratch);
+		return scratch;
+	}
+}
@@ -0,0 +1,153 @@
+package ai.project;
+
+import java.util.Random;
+
+/**
+ * VariableOrdering class
+ *
+ * Decides which unassigned item the Or-Tree search assigns next. The order items are assigned in makes a huge
+ * difference to how much of the tree has to be explored before a solution is found: an item that has few places left
+ * to go should be placed before the items that could push it out of them.
+ *
+ * Partially assigned items never reach the ordering at all; they are already in the Assignments the search starts
+ * from. Of the rest, the strategies are:
+ *  - RANDOM:     any unassigned item, uniformly at random. This is the original Or-Tree behaviour.
+ *  - MRV:        minimum remaining values; the item with the fewest viable slots left.
+ *  - DEGREE:     the item with the most constraints against other items (see ProblemModel.itemDegree).
+ *  - MRV_DEGREE: fewest viable slots, with ties going to the item with the higher degree.
+ *
+ * Every strategy other than RANDOM puts restricted items (evening sections, 500-level courses and CPSC 813/913)
+ * first among equals: they are preferred over any item that ties with them on the strategy's own measure, ahead of the
+ * degree tie-break for MRV_DEGREE. Any ties left after that are broken at random, so repeated searches still turn up
+ * different solutions.
+ *
+ * A search that restarts can also hand over weights it has learned: how many times each item has failed. An item's
+ * weight is then added to its degree, so DEGREE and MRV_DEGREE favour the items that have caused the most trouble
+ * so far (a weighted degree).
+ */
+public class VariableOrdering
+{
+	public enum Strategy
+	{
+		RANDOM,
+		MRV,
+		DEGREE,
+		MRV_DEGREE
+	}
+
+	private final ProblemModel model;
+	private final Strategy strategy;
+	private final Random rand;
+
+	// Used to size up domains when no live Domains are kept
+	private long[] scratch;
+
+	// Learned weight of each item, added to its degree; null if there are none
+	private int[] weights;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model    The model of the problem being searched.
+	 * @param strategy How to choose the next item.
+	 * @param rand     Random source for breaking ties.
+	 */
+	public VariableOrdering(ProblemModel model, Strategy strategy, Random rand)
+	{
+		this.model = model;
+		this.strategy = strategy;
+		this.rand = rand;
+	}
+
+	/**
+	 * Sets the learned weights to add to each item's degree.
+	 *
+	 * @param weights The weight of each item, indexed by item id, or null for none. The array is kept, not copied, so
+	 *                the caller can go on updating it.
+	 */
+	public void setWeights(int[] weights)
+	{
+		this.weights = weights;
+	}
+
+	/**
+	 * Chooses the next item to assign.
+	 *
+	 * @param items    Buffer holding the ids of the unassigned items.
+	 * @param count    The number of ids in items to choose between.
+	 * @param assigned The current Assignments.
+	 * @param domains  The live domains of the unassigned items, or null if they are not being kept. Without them, MRV
+	 *                 has to work out the viable slots of every item, which is a good deal slower.
+	 * @return The index into items of the chosen item.
+	 */
+	public int select(int[] items, int count, Assignments assigned, Domains domains)
+	{
+		if (strategy == Strategy.RANDOM) return rand.nextInt(count);
+
+		boolean useSize = (strategy != Strategy.DEGREE);
+		boolean useDegree = (strategy != Strategy.MRV);
+
+		int best = -1;
+		int bestSize = 0;
+		boolean bestRestricted = false;
+		int bestDegree = 0;
+		int ties = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			int item = items[i];
+			int size = useSize ? domainSize(item, assigned, domains) : 0;
+			boolean restricted = isRestricted(item);
+			int degree = useDegree ? model.itemDegree[item] + ((weights != null) ? weights[item] : 0) : 0;
+
+			int cmp = (best == -1) ? -1 : Integer.compare(size, bestSize);
+			if (cmp == 0) cmp = Boolean.compare(bestRestricted, restricted);
+			if (cmp == 0) cmp = Integer.compare(bestDegree, degree);
+
+			if (cmp < 0)
+			{
+				best = i;
+				bestSize = size;
+				bestRestricted = restricted;
+				bestDegree = degree;
+				ties = 1;
+
+				// Nothing can beat an item that has nowhere left to go
+				if (useSize && size == 0) break;
+			}
+			else if (cmp == 0 && rand.nextInt(++ties) == 0)
+			{
+				// Reservoir sampling, so each of the tied items is equally likely to be chosen
+				best = i;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Predicate: is this an item that can only go in a restricted set of slots, regardless of what else is assigned?
+	 *
+	 * @param item The id of the item.
+	 * @return True for evening sections, 500-level courses and CPSC 813/913.
+	 */
+	private boolean isRestricted(int item)
+	{
+		return model.itemEvening[item] || model.item500Level[item] || model.itemNeeds1800[item];
+	}
+
+	private int domainSize(int item, Assignments assigned, Domains domains)
+	{
+		if (domains != null) return domains.size(item);
+
+		if (scratch == null) scratch = Bits.create(model.getNumSlots());
+		assigned.getViableSlotMask(item, scratch);
+
+		int size = 0;
+		for (long word : scratch)
+		{
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+}